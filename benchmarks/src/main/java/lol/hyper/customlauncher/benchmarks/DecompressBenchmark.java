@@ -0,0 +1,107 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package lol.hyper.customlauncher.benchmarks;
+
+import lol.hyper.customlauncher.ttrupdater.ParallelBzip2;
+import lol.hyper.customlauncher.ttrupdater.PatchDownloader;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class DecompressBenchmark {
+
+    /**
+     * The size of the extracted file.
+     */
+    @Param({"1", "16", "256", "1024"})
+    public int sizeMB;
+    /**
+     * The compressed file.
+     */
+    private File compressed;
+    /**
+     * Where to extract to.
+     */
+    private File output;
+
+    /**
+     * Create the compressed file.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        compressed = SyntheticData.compressedFile(sizeMB);
+        output = Files.createTempFile("clr-bench", ".out").toFile();
+    }
+
+    /**
+     * Delete the files.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(compressed.toPath());
+        Files.deleteIfExists(output.toPath());
+    }
+
+    /**
+     * The launcher's current extraction, which also hashes the output.
+     *
+     * @return The hash.
+     */
+    @Benchmark
+    public String extractBz2() throws Exception {
+        return PatchDownloader.extractBz2(new FileInputStream(compressed), output);
+    }
+
+    /**
+     * Extracting the blocks at the same time on every core. Files under the
+     * parallel threshold fall back to {@link #extractBz2()}.
+     *
+     * @return The hash.
+     */
+    @Benchmark
+    public String parallelExtract() throws Exception {
+        return ParallelBzip2.extract(compressed, output, 0);
+    }
+
+    /**
+     * How files used to be extracted, with a 1 KB buffer.
+     *
+     * @return How many bytes were extracted.
+     */
+    @Benchmark
+    public long streamExtract() throws Exception {
+        byte[] buffer = new byte[1024];
+        int len;
+        long total = 0;
+        try (BZip2CompressorInputStream in = new BZip2CompressorInputStream(new BufferedInputStream(new FileInputStream(compressed))); FileOutputStream out = new FileOutputStream(output)) {
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+                total += len;
+            }
+        }
+        return total;
+    }
+}
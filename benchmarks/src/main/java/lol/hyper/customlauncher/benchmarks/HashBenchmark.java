@@ -0,0 +1,93 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package lol.hyper.customlauncher.benchmarks;
+
+import lol.hyper.customlauncher.ttrupdater.FileVerifier;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HashBenchmark {
+
+    /**
+     * The size of the file to hash.
+     */
+    @Param({"1", "16", "256", "1024"})
+    public int sizeMB;
+    /**
+     * The file to hash.
+     */
+    private File file;
+
+    /**
+     * Create the file. After the first run it will be in the OS cache, so this
+     * measures how fast we can hash, not how fast the disk is.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        file = SyntheticData.randomFile(sizeMB);
+    }
+
+    /**
+     * Delete the file.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * The launcher's current hashing.
+     *
+     * @return The hash.
+     */
+    @Benchmark
+    public String channelSHA1() throws Exception {
+        return FileVerifier.calcSHA1(file);
+    }
+
+    /**
+     * How files used to be hashed, with a FileInputStream and an 8 KB buffer.
+     *
+     * @return The hash.
+     */
+    @Benchmark
+    public String streamSHA1() throws Exception {
+        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int len = input.read(buffer);
+            while (len != -1) {
+                sha1.update(buffer, 0, len);
+                len = input.read(buffer);
+            }
+            return new HexBinaryAdapter().marshal(sha1.digest());
+        }
+    }
+}
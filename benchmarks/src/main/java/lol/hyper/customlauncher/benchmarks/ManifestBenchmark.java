@@ -0,0 +1,77 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package lol.hyper.customlauncher.benchmarks;
+
+import lol.hyper.customlauncher.tools.JSONReader;
+import lol.hyper.customlauncher.ttrupdater.FileVerifier;
+import lol.hyper.customlauncher.ttrupdater.ManifestEntry;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ManifestBenchmark {
+
+    /**
+     * How many files are in the manifest.
+     */
+    @Param({"1000", "5000", "20000"})
+    public int entries;
+    /**
+     * The manifest, as it comes from TTR.
+     */
+    private String manifest;
+
+    /**
+     * Create the manifest.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        manifest = SyntheticData.manifest(entries);
+    }
+
+    /**
+     * Parse the manifest and find the files for our OS, like checkUpdates does.
+     *
+     * @return The files to check.
+     */
+    @Benchmark
+    public List<String> parseManifest() {
+        JSONObject patches = new JSONObject(manifest);
+        return FileVerifier.getFilesForOs(patches);
+    }
+
+    /**
+     * Read the manifest straight into entries and find the files for our OS, without building a JSONObject.
+     *
+     * @return The files to check.
+     */
+    @Benchmark
+    public List<String> streamManifest() throws IOException {
+        JSONReader reader = new JSONReader(new StringReader(manifest));
+        return FileVerifier.getFilesForOs(ManifestEntry.readManifest(reader));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package lol.hyper.customlauncher.benchmarks;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class SyntheticData {
+
+    /**
+     * One megabyte.
+     */
+    public static final int MB = 1024 * 1024;
+
+    /**
+     * Create a file full of random bytes.
+     *
+     * @param sizeMB The size of the file in MB.
+     * @return The file.
+     */
+    public static File randomFile(int sizeMB) throws IOException {
+        File file = Files.createTempFile("clr-bench", ".bin").toFile();
+        Random random = new Random(sizeMB);
+        byte[] chunk = new byte[MB];
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < sizeMB; i++) {
+                random.nextBytes(chunk);
+                out.write(chunk);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Create a bzip2 file that extracts to the given size. The data is half random and
+     * half repeated text, so it compresses about as well as TTR's phase files.
+     *
+     * @param sizeMB The size of the extracted data in MB.
+     * @return The compressed file.
+     */
+    public static File compressedFile(int sizeMB) throws IOException {
+        File file = Files.createTempFile("clr-bench", ".bz2").toFile();
+        Random random = new Random(sizeMB);
+        byte[] text = "phase_3.5/models/char/tt_a_chr_dgm_shorts_torso_1000 ".getBytes(StandardCharsets.US_ASCII);
+        byte[] chunk = new byte[MB];
+        try (OutputStream out = new BZip2CompressorOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (int i = 0; i < sizeMB; i++) {
+                for (int offset = 0; offset < MB; offset += 4096) {
+                    byte[] noise = new byte[2048];
+                    random.nextBytes(noise);
+                    System.arraycopy(noise, 0, chunk, offset, noise.length);
+                    for (int j = offset + 2048; j < offset + 4096; j++) {
+                        chunk[j] = text[j % text.length];
+                    }
+                }
+                out.write(chunk);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Create a patch manifest that looks like TTR's.
+     *
+     * @param entries How many files are in the manifest.
+     * @return The manifest JSON.
+     */
+    public static String manifest(int entries) {
+        Random random = new Random(entries);
+        String[] platforms = {"[\"win32\", \"win64\", \"linux\"]", "[\"win32\"]", "[\"win64\"]", "[\"linux\"]"};
+        StringBuilder manifest = new StringBuilder("{");
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) {
+                manifest.append(',');
+            }
+            String name = "phase_" + (i % 14) + "/file_" + i + ".mf";
+            manifest.append('"').append(name).append("\": {")
+                    .append("\"dl\": \"").append(name).append(".").append(hash(random)).append(".bz2\", ")
+                    .append("\"compHash\": \"").append(hash(random)).append("\", ")
+                    .append("\"hash\": \"").append(hash(random)).append("\", ")
+                    .append("\"only\": ").append(platforms[i % platforms.length]).append(", ")
+                    .append("\"patches\": {\"").append(hash(random)).append("\": {")
+                    .append("\"filename\": \"").append(name).append(".patch.bz2\", ")
+                    .append("\"compPatchHash\": \"").append(hash(random)).append("\", ")
+                    .append("\"patchHash\": \"").append(hash(random)).append("\"}}}");
+        }
+        return manifest.append('}').toString();
+    }
+
+    /**
+     * Make a random SHA1 looking string.
+     *
+     * @param random The random to use.
+     * @return The hex string.
+     */
+    private static String hash(Random random) {
+        StringBuilder hash = new StringBuilder(40);
+        for (int i = 0; i < 40; i++) {
+            hash.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return hash.toString();
+    }
+}
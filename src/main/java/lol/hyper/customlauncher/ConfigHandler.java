@@ -19,13 +19,19 @@ package lol.hyper.customlauncher;
 
 import lol.hyper.customlauncher.tools.ExceptionWindow;
 import lol.hyper.customlauncher.tools.JSONUtils;
+import lol.hyper.customlauncher.tools.TrafficShaper;
+import lol.hyper.customlauncher.ttrupdater.DownloadCache;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.List;
+import java.util.Objects;
 
 public class ConfigHandler {
 
@@ -57,6 +63,78 @@ public class ConfigHandler {
      * TTR install path.
      */
     private File installPath;
+    /**
+     * Hash every game file on launch, instead of trusting the hash index.
+     */
+    private boolean fullVerify;
+    /**
+     * How many game files to download at once.
+     */
+    private int maxDownloads;
+    /**
+     * How many times to retry a game file download.
+     */
+    private int downloadRetries;
+    /**
+     * Extract game files while they download.
+     */
+    private boolean streamDownloads;
+    /**
+     * Game files this size (in MB) or bigger are saved to the temp folder so they can be resumed.
+     */
+    private int resumeThresholdMB;
+    /**
+     * How fast the launcher can download, in KB/s. 0 for no limit.
+     */
+    private int downloadLimitKBps;
+    /**
+     * Check and download game files in the background when the launcher opens.
+     */
+    private boolean backgroundUpdates;
+    /**
+     * How fast background updates can download, in KB/s. 0 for no limit. This is on top of the overall limit.
+     */
+    private int backgroundDownloadKBps;
+    /**
+     * How many game files background updates can hash at once.
+     */
+    private int backgroundThreads;
+    /**
+     * The patch manifest TTR sent on the last login.
+     */
+    private String lastManifest;
+    /**
+     * Where downloaded game files are cached, shared between installs.
+     */
+    private File downloadCacheFolder;
+    /**
+     * How big the download cache can get, in MB. 0 turns it off.
+     */
+    private int downloadCacheMB;
+    /**
+     * Where TTR's patch manifests can be downloaded from.
+     */
+    private List<String> manifestMirrors;
+    /**
+     * Where TTR's game files can be downloaded from.
+     */
+    private List<String> patchMirrors;
+    /**
+     * Game file downloads slower than this, in KB/s, are moved to another mirror. 0 turns this off.
+     */
+    private int stallKBps;
+    /**
+     * Rehash a few game files each minute while the launcher is open, to find damaged files.
+     */
+    private boolean integritySweep;
+    /**
+     * The most game files the integrity sweep checks each minute.
+     */
+    private int integrityFilesPerMinute;
+    /**
+     * How much the integrity sweep can read each minute, in MB.
+     */
+    private int integrityMBPerMinute;
 
     /**
      * Initializes the config.
@@ -92,22 +170,204 @@ public class ConfigHandler {
         return installPath;
     }
 
+    /**
+     * Should we hash every game file on launch?
+     *
+     * @return Yes/No
+     */
+    public boolean fullVerify() {
+        return fullVerify;
+    }
+
+    /**
+     * Get how many game files to download at once.
+     *
+     * @return The download limit.
+     */
+    public int getMaxDownloads() {
+        return maxDownloads;
+    }
+
+    /**
+     * Get how many times to retry a game file download.
+     *
+     * @return The retry count.
+     */
+    public int getDownloadRetries() {
+        return downloadRetries;
+    }
+
+    /**
+     * Should game files be extracted while they download?
+     *
+     * @return Yes/No
+     */
+    public boolean streamDownloads() {
+        return streamDownloads;
+    }
+
+    /**
+     * Get the size where game file downloads are saved so they can be resumed.
+     *
+     * @return The size in bytes.
+     */
+    public long getResumeThreshold() {
+        return resumeThresholdMB * 1024L * 1024L;
+    }
+
+    /**
+     * Get how fast the launcher can download.
+     *
+     * @return The limit in bytes per second, 0 for no limit.
+     */
+    public long getDownloadLimit() {
+        return downloadLimitKBps * 1024L;
+    }
+
+    /**
+     * Should game files be checked in the background when the launcher opens?
+     *
+     * @return Yes/No
+     */
+    public boolean backgroundUpdates() {
+        return backgroundUpdates;
+    }
+
+    /**
+     * Get how fast background updates can download.
+     *
+     * @return The limit in bytes per second, 0 for no limit.
+     */
+    public long getBackgroundDownloadLimit() {
+        return backgroundDownloadKBps * 1024L;
+    }
+
+    /**
+     * Get how many game files background updates can hash at once.
+     *
+     * @return The thread limit.
+     */
+    public int getBackgroundThreads() {
+        return backgroundThreads;
+    }
+
+    /**
+     * Get the patch manifest TTR sent on the last login.
+     *
+     * @return The manifest, or an empty string if we have never logged in.
+     */
+    public String getLastManifest() {
+        return lastManifest;
+    }
+
+    /**
+     * Get where downloaded game files are cached.
+     *
+     * @return The cache folder.
+     */
+    public File getDownloadCacheFolder() {
+        return downloadCacheFolder;
+    }
+
+    /**
+     * Get how big the download cache can get.
+     *
+     * @return The size in bytes, 0 if the cache is off.
+     */
+    public long getDownloadCacheSize() {
+        return downloadCacheMB * 1024L * 1024L;
+    }
+
+    /**
+     * Get where TTR's patch manifests can be downloaded from.
+     *
+     * @return The base URL of each mirror.
+     */
+    public List<String> getManifestMirrors() {
+        return manifestMirrors;
+    }
+
+    /**
+     * Get where TTR's game files can be downloaded from.
+     *
+     * @return The base URL of each mirror.
+     */
+    public List<String> getPatchMirrors() {
+        return patchMirrors;
+    }
+
+    /**
+     * Get how slow a game file download can get before it's moved to another mirror.
+     *
+     * @return The speed in bytes per second, 0 for no limit.
+     */
+    public long getStallLimit() {
+        return stallKBps * 1024L;
+    }
+
+    /**
+     * Should game files be rehashed in the background while the launcher is open?
+     *
+     * @return Yes/No
+     */
+    public boolean integritySweep() {
+        return integritySweep;
+    }
+
+    /**
+     * Get the most game files the integrity sweep checks each minute.
+     *
+     * @return The file count.
+     */
+    public int getIntegrityFilesPerMinute() {
+        return integrityFilesPerMinute;
+    }
+
+    /**
+     * Get how much the integrity sweep can read each minute.
+     *
+     * @return The size in bytes.
+     */
+    public long getIntegrityBytesPerMinute() {
+        return integrityMBPerMinute * 1024L * 1024L;
+    }
+
+    /**
+     * Save the patch manifest TTR sent on login, so background updates can use it next time.
+     *
+     * @param manifest The manifest.
+     */
+    public void setLastManifest(String manifest) {
+        if (manifest == null || manifest.equals(lastManifest)) {
+            return;
+        }
+        this.lastManifest = manifest;
+        configJSON.put("lastManifest", manifest);
+        JSONUtils.writeFile(configJSON, CONFIG_FILE);
+    }
+
     /**
      * Update the config and save it to disk.
      *
      * @param invasionNotifications    Show invasion notifications?
      * @param fieldOfficeNotifications Show field office notifications?
+     * @param fullVerify               Hash every game file on launch?
+     * @param backgroundUpdates        Download updates in the background?
      * @param path                     TTR install path.
      */
-    public void updateConfig(boolean invasionNotifications, boolean fieldOfficeNotifications, File path) {
+    public void updateConfig(boolean invasionNotifications, boolean fieldOfficeNotifications, boolean fullVerify, boolean backgroundUpdates, File path) {
         // make sure we change what we have loaded
         this.invasionNotifications = invasionNotifications;
         this.fieldOfficeNotifications = fieldOfficeNotifications;
+        this.fullVerify = fullVerify;
+        this.backgroundUpdates = backgroundUpdates;
         this.installPath = path;
 
         // edit the json, then save it
         configJSON.put("showInvasionNotifications", invasionNotifications);
         configJSON.put("showFieldOfficeNotifications", fieldOfficeNotifications);
+        configJSON.put("fullVerify", fullVerify);
+        configJSON.put("backgroundUpdates", backgroundUpdates);
         configJSON.put("ttrInstallLocation", path.getAbsolutePath());
         JSONUtils.writeFile(configJSON, CONFIG_FILE);
     }
@@ -125,6 +385,78 @@ public class ConfigHandler {
             configJSON.put("showFieldOfficeNotifications", true);
             changed = true;
         }
+        if (!configJSON.has("fullVerify")) {
+            configJSON.put("fullVerify", false);
+            changed = true;
+        }
+        if (!configJSON.has("maxDownloads")) {
+            configJSON.put("maxDownloads", 4);
+            changed = true;
+        }
+        if (!configJSON.has("downloadRetries")) {
+            configJSON.put("downloadRetries", 3);
+            changed = true;
+        }
+        if (!configJSON.has("streamDownloads")) {
+            configJSON.put("streamDownloads", true);
+            changed = true;
+        }
+        if (!configJSON.has("resumeThresholdMB")) {
+            configJSON.put("resumeThresholdMB", 16);
+            changed = true;
+        }
+        if (!configJSON.has("downloadLimitKBps")) {
+            configJSON.put("downloadLimitKBps", 0);
+            changed = true;
+        }
+        if (!configJSON.has("backgroundUpdates")) {
+            configJSON.put("backgroundUpdates", false);
+            changed = true;
+        }
+        if (!configJSON.has("backgroundDownloadKBps")) {
+            configJSON.put("backgroundDownloadKBps", 2048);
+            changed = true;
+        }
+        if (!configJSON.has("backgroundThreads")) {
+            configJSON.put("backgroundThreads", 1);
+            changed = true;
+        }
+        if (!configJSON.has("lastManifest")) {
+            configJSON.put("lastManifest", "");
+            changed = true;
+        }
+        if (!configJSON.has("downloadCacheFolder")) {
+            configJSON.put("downloadCacheFolder", DownloadCache.getDefaultFolder().getAbsolutePath());
+            changed = true;
+        }
+        if (!configJSON.has("downloadCacheMB")) {
+            configJSON.put("downloadCacheMB", 2048);
+            changed = true;
+        }
+        if (!configJSON.has("manifestMirrors")) {
+            configJSON.put("manifestMirrors", new JSONArray().put("https://cdn.toontownrewritten.com"));
+            changed = true;
+        }
+        if (!configJSON.has("patchMirrors")) {
+            configJSON.put("patchMirrors", new JSONArray().put("https://download.toontownrewritten.com/patches/"));
+            changed = true;
+        }
+        if (!configJSON.has("stallKBps")) {
+            configJSON.put("stallKBps", 16);
+            changed = true;
+        }
+        if (!configJSON.has("integritySweep")) {
+            configJSON.put("integritySweep", false);
+            changed = true;
+        }
+        if (!configJSON.has("integrityFilesPerMinute")) {
+            configJSON.put("integrityFilesPerMinute", 4);
+            changed = true;
+        }
+        if (!configJSON.has("integrityMBPerMinute")) {
+            configJSON.put("integrityMBPerMinute", 256);
+            changed = true;
+        }
         if (!configJSON.has("ttrInstallLocation")) {
             configJSON.put("ttrInstallLocation", System.getProperty("user.dir") + File.separator + "ttr-files");
             changed = true;
@@ -158,13 +490,36 @@ public class ConfigHandler {
         installPath = new File(configJSON.getString("ttrInstallLocation"));
         invasionNotifications = configJSON.getBoolean("showInvasionNotifications");
         fieldOfficeNotifications = configJSON.getBoolean("showFieldOfficeNotifications");
+        fullVerify = configJSON.getBoolean("fullVerify");
+        maxDownloads = configJSON.getInt("maxDownloads");
+        downloadRetries = configJSON.getInt("downloadRetries");
+        streamDownloads = configJSON.getBoolean("streamDownloads");
+        resumeThresholdMB = configJSON.getInt("resumeThresholdMB");
+        downloadLimitKBps = configJSON.getInt("downloadLimitKBps");
+        backgroundUpdates = configJSON.getBoolean("backgroundUpdates");
+        backgroundDownloadKBps = configJSON.getInt("backgroundDownloadKBps");
+        backgroundThreads = configJSON.getInt("backgroundThreads");
+        lastManifest = configJSON.getString("lastManifest");
+        downloadCacheFolder = new File(configJSON.getString("downloadCacheFolder"));
+        downloadCacheMB = configJSON.getInt("downloadCacheMB");
+        manifestMirrors = configJSON.getJSONArray("manifestMirrors").toList().stream().map(Objects::toString).toList();
+        patchMirrors = configJSON.getJSONArray("patchMirrors").toList().stream().map(Objects::toString).toList();
+        stallKBps = configJSON.getInt("stallKBps");
+        integritySweep = configJSON.getBoolean("integritySweep");
+        integrityFilesPerMinute = configJSON.getInt("integrityFilesPerMinute");
+        integrityMBPerMinute = configJSON.getInt("integrityMBPerMinute");
+        // every download goes through the traffic shaper, so keep its limits in sync with the config
+        TrafficShaper.getInstance().setLimits(getDownloadLimit(), getBackgroundDownloadLimit());
 
         // create the ttr-files folder
         if (!(installPath.exists())) {
             try {
                 Files.createDirectory(installPath.toPath());
                 logger.info("Creating TTR install folder at {}", installPath);
-                new FirstLaunch();
+                // there is nobody to show the first launch prompts to in headless mode
+                if (!GraphicsEnvironment.isHeadless()) {
+                    new FirstLaunch();
+                }
             } catch (IOException exception) {
                 logger.error("Cannot create TTR folder!", exception);
                 new ExceptionWindow(exception);
@@ -175,6 +530,24 @@ public class ConfigHandler {
             logger.info("Config version: {}", configJSON.getInt("version"));
             logger.info("showInvasionNotifications: {}", invasionNotifications);
             logger.info("showFieldOfficeNotifications: {}", fieldOfficeNotifications);
+            logger.info("fullVerify: {}", fullVerify);
+            logger.info("maxDownloads: {}", maxDownloads);
+            logger.info("downloadRetries: {}", downloadRetries);
+            logger.info("streamDownloads: {}", streamDownloads);
+            logger.info("resumeThresholdMB: {}", resumeThresholdMB);
+            logger.info("downloadLimitKBps: {}", downloadLimitKBps);
+            logger.info("backgroundUpdates: {}", backgroundUpdates);
+            logger.info("backgroundDownloadKBps: {}", backgroundDownloadKBps);
+            logger.info("backgroundThreads: {}", backgroundThreads);
+            logger.info("lastManifest: {}", lastManifest);
+            logger.info("downloadCacheFolder: {}", downloadCacheFolder.getAbsolutePath());
+            logger.info("downloadCacheMB: {}", downloadCacheMB);
+            logger.info("manifestMirrors: {}", manifestMirrors);
+            logger.info("patchMirrors: {}", patchMirrors);
+            logger.info("stallKBps: {}", stallKBps);
+            logger.info("integritySweep: {}", integritySweep);
+            logger.info("integrityFilesPerMinute: {}", integrityFilesPerMinute);
+            logger.info("integrityMBPerMinute: {}", integrityMBPerMinute);
             logger.info("ttrInstallLocation: {}", installPath.getAbsolutePath());
         }
     }
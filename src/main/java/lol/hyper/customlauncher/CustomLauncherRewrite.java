@@ -19,6 +19,7 @@ package lol.hyper.customlauncher;
 
 import lol.hyper.customlauncher.releasenotes.ReleaseNotesTracker;
 import lol.hyper.customlauncher.tools.ExceptionWindow;
+import lol.hyper.customlauncher.ttrupdater.HeadlessUpdater;
 import lol.hyper.customlauncher.updater.UpdateChecker;
 import lol.hyper.customlauncher.windows.MainWindow;
 import org.apache.logging.log4j.LogManager;
@@ -32,6 +33,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Properties;
 
 public class CustomLauncherRewrite {
@@ -50,14 +52,15 @@ public class CustomLauncherRewrite {
     private static Image icon;
     /**
      * The user agent used for requests.
-     * This is set here since it includes the version.
+     * This is set again in main since it includes the version. Until then, requests go out without the version.
      */
-    private static String userAgent;
+    private static String userAgent = "CustomLauncherRewrite https://github.com/hyperdefined/CustomLauncherRewrite";
 
     /**
      * The entry point for the program.
      *
-     * @param args Only used for updating the program. Passing "--remove-old VERSION" will simply remove that old version.
+     * @param args Passing "--remove-old VERSION" will simply remove that old version. Passing "--update" will
+     *             update the TTR install without opening any windows, see {@link HeadlessUpdater}.
      */
     public static void main(String[] args) {
         // load the log4j2config
@@ -90,6 +93,18 @@ public class CustomLauncherRewrite {
             }
         }
 
+        // update the game files from the command line, then exit
+        // "--update [--full-verify] [--manifest <manifest>] [--summary <file>]"
+        if (args.length >= 1 && args[0].equalsIgnoreCase("--update")) {
+            File configFolder = new File("config");
+            if (!configFolder.exists() && !configFolder.mkdir()) {
+                logger.error("Unable to create config folder!");
+                System.exit(HeadlessUpdater.EXIT_FAILED);
+            }
+            HeadlessUpdater headlessUpdater = new HeadlessUpdater(Arrays.copyOfRange(args, 1, args.length));
+            System.exit(headlessUpdater.run());
+        }
+
         // this is used for removing old versions on Windows
         // passing "--remove-old <version>" will delete that version's exe
         // mainly for cleanup so there aren't 100 exes in the folder
@@ -112,9 +127,16 @@ public class CustomLauncherRewrite {
         File tempFolder = new File("temp");
         if (tempFolder.exists()) {
             // delete all files in the temp folder
+            // partial downloads are kept so they can be resumed
             File[] tempFolderFiles = tempFolder.listFiles();
+            boolean keptFiles = false;
             if (tempFolderFiles != null) {
                 for (File currentFile : tempFolderFiles) {
+                    if (currentFile.getName().endsWith(".part") || currentFile.getName().endsWith(".part.json")) {
+                        logger.info("Keeping partial download {}", currentFile.getAbsolutePath());
+                        keptFiles = true;
+                        continue;
+                    }
                     try {
                         Files.delete(currentFile.toPath());
                     } catch (IOException exception) {
@@ -124,11 +146,13 @@ public class CustomLauncherRewrite {
                 }
             }
             // delete the actual temp folder
-            try {
-                Files.delete(Paths.get(System.getProperty("user.dir") + File.separator + "temp"));
-            } catch (IOException exception) {
-                logger.error("Unable to delete temp folder!", exception);
-                new ExceptionWindow(exception);
+            if (!keptFiles) {
+                try {
+                    Files.delete(Paths.get(System.getProperty("user.dir") + File.separator + "temp"));
+                } catch (IOException exception) {
+                    logger.error("Unable to delete temp folder!", exception);
+                    new ExceptionWindow(exception);
+                }
             }
         }
 
@@ -22,23 +22,24 @@ import dorkbox.notify.Position;
 import dorkbox.notify.Theme;
 import lol.hyper.customlauncher.ConfigHandler;
 import lol.hyper.customlauncher.CustomLauncherRewrite;
+import lol.hyper.customlauncher.tools.JSONReader;
 import lol.hyper.customlauncher.tools.JSONUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import javax.swing.Timer;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -133,12 +134,20 @@ public class InvasionTrackerPanel extends JPanel {
         timer.setDelay(500);
         timer.start();
 
-        // fetch ToonHQ's data
-        logger.info("Fetching ToonHQ district data...");
-        JSONArray districts = JSONUtils.requestJSONArray("https://toonhq.org/api/districts/");
-        logger.info("Fetching ToonHQ cog data...");
-        JSONArray cogs = JSONUtils.requestJSONArray("https://toonhq.org/api/cogs/");
+        // fetch ToonHQ's data, both at once and without holding up the window
+        logger.info("Fetching ToonHQ district and cog data...");
+        CompletableFuture<Map<Integer, String>> districts = JSONUtils.requestJSONAsync("https://toonhq.org/api/districts/", InvasionTrackerPanel::readNames);
+        CompletableFuture<Map<Integer, String>> cogs = JSONUtils.requestJSONAsync("https://toonhq.org/api/cogs/", InvasionTrackerPanel::readNames);
+        districts.thenAcceptBoth(cogs, this::startTracking);
+    }
 
+    /**
+     * Start tracking invasions once we know ToonHQ's districts and cogs.
+     *
+     * @param districts The district names, or null if they could not be read.
+     * @param cogs      The cog names, or null if they could not be read.
+     */
+    private void startTracking(Map<Integer, String> districts, Map<Integer, String> cogs) {
         if (districts == null || cogs == null) {
             logger.info("No districts or cogs found");
             logger.info("Cog data: {}", cogs);
@@ -147,8 +156,8 @@ public class InvasionTrackerPanel extends JPanel {
             return;
         }
 
-        updateDistrictMap(districts);
-        updateCogMap(cogs);
+        districtMap.putAll(districts);
+        cogMap.putAll(cogs);
 
         // start the timer for reading the API
         startInvasionRefresh();
@@ -243,10 +252,10 @@ public class InvasionTrackerPanel extends JPanel {
      */
     private void makeRequest() {
         String INVASION_URL = "https://toonhq.org/api/invasions/1/";
-        JSONObject lastResult = JSONUtils.requestJSON(INVASION_URL);
+        Map<Integer, Invasion> currentInvasions = JSONUtils.requestJSON(INVASION_URL, this::readInvasions);
 
         // if the request failed, stop the task
-        if (lastResult == null) {
+        if (currentInvasions == null) {
             isDown = true;
             executor.shutdown();
             return;
@@ -255,47 +264,30 @@ public class InvasionTrackerPanel extends JPanel {
         isDown = false; // make sure to set this to false since we can read the API
 
         // iterate through each of the invasions
-        JSONArray invasionsArray = lastResult.getJSONArray("invasions");
-        for (int i = 0; i < invasionsArray.length(); i++) {
-            JSONObject invasion = invasionsArray.getJSONObject(i);
-            int districtId = invasion.getInt("district");
-            String districtName = districtMap.get(districtId);
-            String cogType = cogMap.get(invasion.getInt("cog"));
-            int cogsTotal = invasion.getInt("total");
-            int cogsDefeated = invasion.getInt("defeated");
-            double defeatRate = invasion.getDouble("defeat_rate");
-            long asOf = invasion.getLong("as_of");
-
-            // estimate time left
-            double secondsRemaining = (cogsTotal - cogsDefeated) / defeatRate;
-            double secondsElapsed = (System.currentTimeMillis() / 1000.0) - asOf;
-            long secondsLeft = Math.max((long) (secondsRemaining - secondsElapsed), 0);
-            ZonedDateTime estimatedEnd = ZonedDateTime.now().plusSeconds(secondsLeft);
+        for (Map.Entry<Integer, Invasion> entry : currentInvasions.entrySet()) {
+            int districtId = entry.getKey();
+            Invasion invasion = entry.getValue();
 
             // this is a new invasion that we are not tracking currently
             if (!invasions.containsKey(districtId)) {
                 // store the information about it
-                Invasion newInvasion = new Invasion(districtName, cogType, cogsTotal, false);
-                newInvasion.updateCogsDefeated(cogsDefeated);
-                newInvasion.setDefeatRate(defeatRate);
-                newInvasion.setEndTime(estimatedEnd);
-                invasions.put(districtId, newInvasion);
+                invasions.put(districtId, invasion);
 
                 // show notification for it
                 if (configHandler.showCogInvasionNotifications()) {
-                    showNotification(newInvasion, true);
+                    showNotification(invasion, true);
                 }
 
-                logger.info("Tracking new invasion for {}. Cogs: {}/{}", districtName, cogsDefeated, cogsTotal);
+                logger.info("Tracking new invasion for {}. Cogs: {}/{}", invasion.getDistrict(), invasion.getCogsDefeated(), invasion.getCogsTotal());
             } else {
                 // update the information for the invasion
                 Invasion tempInv = invasions.get(districtId);
                 int oldCogsDefeated = tempInv.getCogsDefeated();
-                tempInv.updateCogsDefeated(cogsDefeated);
-                tempInv.setDefeatRate(defeatRate);
-                tempInv.setEndTime(estimatedEnd);
-                if (oldCogsDefeated != cogsDefeated) {
-                    logger.info("Updating invasion for {}. Cogs: {} -> {}", districtName, oldCogsDefeated, cogsDefeated);
+                tempInv.updateCogsDefeated(invasion.getCogsDefeated());
+                tempInv.setDefeatRate(invasion.getDefeatRate());
+                tempInv.setEndTime(invasion.getEndTime());
+                if (oldCogsDefeated != invasion.getCogsDefeated()) {
+                    logger.info("Updating invasion for {}. Cogs: {} -> {}", invasion.getDistrict(), oldCogsDefeated, invasion.getCogsDefeated());
                 }
             }
         }
@@ -305,16 +297,7 @@ public class InvasionTrackerPanel extends JPanel {
         Iterator<Map.Entry<Integer, Invasion>> it = invasions.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry<Integer, Invasion> pair = it.next();
-            boolean isOnApi = false;
-            for (int i = 0; i < invasionsArray.length(); i++) {
-                JSONObject invasion = invasionsArray.getJSONObject(i);
-                int districtId = invasion.getInt("district");
-                if (pair.getKey().equals(districtId)) {
-                    isOnApi = true;
-                }
-            }
-
-            if (!isOnApi) {
+            if (!currentInvasions.containsKey(pair.getKey())) {
                 String savedDuration = (System.nanoTime() - pair.getValue().getCacheStartTime()) / 1000000000 + " seconds.";
                 if (configHandler.showCogInvasionNotifications()) {
                     showNotification(pair.getValue(), false);
@@ -328,39 +311,89 @@ public class InvasionTrackerPanel extends JPanel {
     }
 
     /**
-     * Update the district ID map from ToonHQ.
+     * Read ToonHQ's invasion list straight into invasions.
      *
-     * @param data The JSON data from their API.
+     * @param reader The JSON from their API.
+     * @return The invasions, keyed by district ID.
      */
-    private void updateDistrictMap(JSONArray data) {
-        for (int i = 0; i < data.length(); i++) {
-            JSONObject district = data.getJSONObject(i);
-            int gameId = district.getInt("game");
-            // make sure we pull TTR districts (id = 1)
-            if (gameId == 1) {
-                int id = district.getInt("id");
-                String name = district.getString("name");
-                districtMap.put(id, name);
+    private Map<Integer, Invasion> readInvasions(JSONReader reader) throws IOException {
+        Map<Integer, Invasion> currentInvasions = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("invasions")) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                int districtId = -1;
+                int cogId = -1;
+                int cogsTotal = 0;
+                int cogsDefeated = 0;
+                double defeatRate = 0;
+                long asOf = 0;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "district" -> districtId = reader.nextInt();
+                        case "cog" -> cogId = reader.nextInt();
+                        case "total" -> cogsTotal = reader.nextInt();
+                        case "defeated" -> cogsDefeated = reader.nextInt();
+                        case "defeat_rate" -> defeatRate = reader.nextDouble();
+                        case "as_of" -> asOf = reader.nextLong();
+                        default -> reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                // estimate time left
+                double secondsRemaining = (cogsTotal - cogsDefeated) / defeatRate;
+                double secondsElapsed = (System.currentTimeMillis() / 1000.0) - asOf;
+                long secondsLeft = Math.max((long) (secondsRemaining - secondsElapsed), 0);
+                ZonedDateTime estimatedEnd = ZonedDateTime.now().plusSeconds(secondsLeft);
+
+                Invasion invasion = new Invasion(districtMap.get(districtId), cogMap.get(cogId), cogsTotal, false);
+                invasion.updateCogsDefeated(cogsDefeated);
+                invasion.setDefeatRate(defeatRate);
+                invasion.setEndTime(estimatedEnd);
+                currentInvasions.put(districtId, invasion);
             }
+            reader.endArray();
         }
+        reader.endObject();
+        return currentInvasions;
     }
 
     /**
-     * Update the cog ID map from ToonHQ.
+     * Read a list of districts or cogs from ToonHQ, keeping only the ones for TTR.
      *
-     * @param data The JSON data from their API.
+     * @param reader The JSON from their API.
+     * @return The names, keyed by ID.
      */
-    private void updateCogMap(JSONArray data) {
-        for (int i = 0; i < data.length(); i++) {
-            JSONObject cog = data.getJSONObject(i);
-            int gameId = cog.getInt("game");
-            // make sure we pull TTR cogs (id = 1)
+    private static Map<Integer, String> readNames(JSONReader reader) throws IOException {
+        Map<Integer, String> names = new HashMap<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int gameId = -1;
+            int id = -1;
+            String name = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "game" -> gameId = reader.nextInt();
+                    case "id" -> id = reader.nextInt();
+                    case "name" -> name = reader.nextString();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            // make sure we pull TTR's (id = 1)
             if (gameId == 1) {
-                int id = cog.getInt("id");
-                String name = cog.getString("name");
-                cogMap.put(id, name);
+                names.put(id, name);
             }
         }
+        reader.endArray();
+        return names;
     }
 
     /**
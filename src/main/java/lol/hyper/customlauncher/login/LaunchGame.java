@@ -21,6 +21,7 @@ import lol.hyper.customlauncher.ConfigHandler;
 import lol.hyper.customlauncher.tools.ExceptionWindow;
 import lol.hyper.customlauncher.tools.OSDetection;
 import lol.hyper.customlauncher.tools.PopUpWindow;
+import lol.hyper.customlauncher.ttrupdater.IntegritySweeper;
 import lol.hyper.customlauncher.ttrupdater.TTRUpdater;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -79,6 +80,8 @@ public final class LaunchGame extends Thread {
         // Check for TTR updates after login
         // We do this after login since TTR sends back a patch manifest to check game files after login
         // This used to not be the case, but we follow what the real launcher does
+        // Save the manifest so the next launch can check files in the background before login
+        configHandler.setLastManifest(manifest);
         TTRUpdater ttrUpdater = new TTRUpdater();
         ttrUpdater.setVisible(true);
         ttrUpdater.checkUpdates(manifest);
@@ -142,6 +145,8 @@ public final class LaunchGame extends Thread {
         env.put("TTR_PLAYCOOKIE", this.cookie);
 
         Thread t1 = new Thread(() -> {
+            // don't read game files while the game is using them
+            IntegritySweeper.gameStarted();
             try {
                 Process process = pb.start();
                 process.getInputStream().close();
@@ -149,6 +154,8 @@ public final class LaunchGame extends Thread {
             } catch (IOException | InterruptedException exception) {
                 logger.error("Unable to launch game!", exception);
                 new ExceptionWindow(exception);
+            } finally {
+                IntegritySweeper.gameStopped();
             }
         });
         t1.start();
@@ -17,10 +17,12 @@
 
 package lol.hyper.customlauncher.login;
 
-import lol.hyper.customlauncher.CustomLauncherRewrite;
 import lol.hyper.customlauncher.login.windows.TwoFactorAuth;
+import lol.hyper.customlauncher.tools.ContentEncoding;
 import lol.hyper.customlauncher.tools.ExceptionWindow;
 import lol.hyper.customlauncher.tools.PopUpWindow;
+import lol.hyper.customlauncher.tools.SharedHttpClient;
+import lol.hyper.customlauncher.tools.TrafficShaper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.json.JSONObject;
@@ -37,6 +39,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LoginHandler {
 
@@ -59,7 +62,7 @@ public class LoginHandler {
     /**
      * HttpClient for requests.
      */
-    private final HttpClient client = HttpClient.newHttpClient();
+    private final HttpClient client = SharedHttpClient.get();
 
     /**
      * Starts the login process.
@@ -168,20 +171,24 @@ public class LoginHandler {
             formBody.append(URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8));
         }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(REQUEST_URL))
-                .header("User-Agent", CustomLauncherRewrite.getUserAgent())
+        HttpRequest request = ContentEncoding.accept(SharedHttpClient.newRequest(URI.create(REQUEST_URL)))
                 .header("Content-Type", "application/x-www-form-urlencoded")
                 .POST(HttpRequest.BodyPublishers.ofString(formBody.toString()))
                 .build();
 
         HttpResponse<String> response;
+        // logins are interactive, downloads wait for them
+        TrafficShaper trafficShaper = TrafficShaper.getInstance();
+        trafficShaper.beginInteractive();
+        AtomicLong bytes = new AtomicLong();
         try {
-            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            response = client.send(request, ContentEncoding.ofString(bytes::set));
         } catch (IOException | InterruptedException exception) {
             logger.error("Unable to send login request!", exception);
             new ExceptionWindow(exception);
             return Collections.emptyMap();
+        } finally {
+            trafficShaper.endInteractive(bytes.get());
         }
 
         String responseData = response.body();
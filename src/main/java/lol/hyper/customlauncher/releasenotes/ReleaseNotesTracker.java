@@ -17,13 +17,15 @@
 
 package lol.hyper.customlauncher.releasenotes;
 
+import lol.hyper.customlauncher.tools.JSONReader;
 import lol.hyper.customlauncher.tools.JSONUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -43,20 +45,45 @@ public class ReleaseNotesTracker {
      */
     public void getAllReleaseNotes() {
         logger.info("Fetching game updates...");
-        JSONArray updateList = JSONUtils.requestJSONArray("https://www.toontownrewritten.com/api/releasenotes");
+        List<GameUpdate> updateList = JSONUtils.requestJSON("https://www.toontownrewritten.com/api/releasenotes", ReleaseNotesTracker::readGameUpdates);
         if (updateList == null) {
             logger.warn("Unable to fetch game updates! API returned null on response.");
             return;
         }
-        for (int i = 0; i < updateList.length(); i++) {
-            JSONObject update = updateList.getJSONObject(i);
-            int id = update.getInt("noteId");
-            String version = update.getString("slug");
-            String date = update.getString("date");
-            GameUpdate newUpdate = new GameUpdate(id, version, date);
-            allGameUpdates.add(newUpdate);
+        allGameUpdates.addAll(updateList);
+        logger.info("Found {} total game updates", updateList.size());
+    }
+
+    /**
+     * Read the list of release notes. Only the fields we use are kept, the rest are skipped.
+     *
+     * @param reader The release notes JSON.
+     * @return The game updates.
+     */
+    private static List<GameUpdate> readGameUpdates(JSONReader reader) throws IOException {
+        List<GameUpdate> updates = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int id = -1;
+            String version = null;
+            String date = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "noteId" -> id = reader.nextInt();
+                    case "slug" -> version = reader.nextString();
+                    case "date" -> date = reader.nextString();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (id == -1 || version == null || date == null) {
+                throw new IOException("Release note is missing noteId, slug or date");
+            }
+            updates.add(new GameUpdate(id, version, date));
         }
-        logger.info("Found {} total game updates", updateList.length());
+        reader.endArray();
+        return updates;
     }
 
     /**
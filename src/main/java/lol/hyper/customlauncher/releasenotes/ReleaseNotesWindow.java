@@ -38,7 +38,6 @@ import lol.hyper.customlauncher.CustomLauncherRewrite;
 import lol.hyper.customlauncher.tools.JSONUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.json.JSONObject;
 
 import javax.swing.*;
 import java.awt.*;
@@ -77,16 +76,19 @@ public class ReleaseNotesWindow extends JFrame {
         verticalScrollBar.setValue(verticalScrollBar.getMinimum());
         getContentPane().add(scrollPane);
 
-        JSONObject notesJSON = JSONUtils.requestJSON("https://www.toontownrewritten.com/api/releasenotes/" + gameUpdate.id());
-        if (notesJSON == null) {
-            return;
-        }
-        String notes = notesJSON.getString("body");
-        formatContent(notes);
+        // the window shows up once the notes are here, so the launcher does not freeze while they load
+        JSONUtils.requestJSONAsync("https://www.toontownrewritten.com/api/releasenotes/" + gameUpdate.id()).thenAccept(notesJSON -> SwingUtilities.invokeLater(() -> {
+            if (notesJSON == null) {
+                dispose();
+                return;
+            }
+            String notes = notesJSON.getString("body");
+            formatContent(notes);
 
-        setLocationRelativeTo(null);
-        pack();
-        setVisible(true);
+            setLocationRelativeTo(null);
+            pack();
+            setVisible(true);
+        }));
     }
 
     /**
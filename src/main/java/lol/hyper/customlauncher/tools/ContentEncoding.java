@@ -0,0 +1,276 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.tools;
+
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+public final class ContentEncoding {
+
+    /**
+     * The encodings we ask for. Brotli is not offered, since the JDK can't read it without another library.
+     */
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    /**
+     * The ContentEncoding logger.
+     */
+    private static final Logger logger = LogManager.getLogger(ContentEncoding.class);
+    /**
+     * Bytes of compressible responses, as they came over the network.
+     */
+    private static final AtomicLong wireBytes = new AtomicLong();
+    /**
+     * Bytes of compressible responses, after they were decompressed.
+     */
+    private static final AtomicLong decodedBytes = new AtomicLong();
+
+    /**
+     * Ask the server to compress the response. Only use this with {@link #ofString()} or {@link #decode(HttpResponse)},
+     * the client will not decompress it otherwise.
+     *
+     * @param request The request.
+     * @return The same request.
+     */
+    public static HttpRequest.Builder accept(HttpRequest.Builder request) {
+        return request.header("Accept-Encoding", ACCEPT_ENCODING);
+    }
+
+    /**
+     * Read a UTF-8 response body into a String, decompressing it if the server compressed it.
+     *
+     * @return The body handler.
+     */
+    public static HttpResponse.BodyHandler<String> ofString() {
+        return ofString(bytes -> {});
+    }
+
+    /**
+     * Read a UTF-8 response body into a String, decompressing it if the server compressed it.
+     *
+     * @param wireBytes Told how many bytes came over the network, before the body is decompressed.
+     * @return The body handler.
+     */
+    public static HttpResponse.BodyHandler<String> ofString(LongConsumer wireBytes) {
+        return responseInfo -> {
+            String encoding = getEncoding(responseInfo.statusCode(), responseInfo.headers());
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), bytes -> {
+                wireBytes.accept(bytes.length);
+                if (bytes.length == 0) {
+                    return "";
+                }
+                try (DecodedStream body = new DecodedStream(new ByteArrayInputStream(bytes), encoding)) {
+                    return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            });
+        };
+    }
+
+    /**
+     * Decompress a streamed response body as it's read. Reading may block until the server sends more,
+     * so don't read it on the HttpClient's own threads.
+     *
+     * @param response The response, from {@link HttpResponse.BodyHandlers#ofInputStream()}.
+     * @return The decompressed body.
+     * @throws IOException If the compressed body is broken. The response is closed if this happens.
+     */
+    public static DecodedStream decode(HttpResponse<InputStream> response) throws IOException {
+        String encoding = getEncoding(response.statusCode(), response.headers());
+        if (response.headers().firstValueAsLong("Content-Length").orElse(-1) == 0) {
+            encoding = "identity";
+        }
+        try {
+            return new DecodedStream(response.body(), encoding);
+        } catch (IOException exception) {
+            response.body().close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Get how a response's body is encoded. A 204 or 304 has no body, even if the headers
+     * say what it would have been encoded with.
+     *
+     * @param status  The response's status code.
+     * @param headers The response's headers.
+     * @return The Content-Encoding.
+     */
+    private static String getEncoding(int status, HttpHeaders headers) {
+        if (status == 204 || status == 304) {
+            return "identity";
+        }
+        return headers.firstValue("Content-Encoding").orElse("identity");
+    }
+
+    /**
+     * Log how much compression saved since the launcher started.
+     */
+    public static void logSavings() {
+        long decoded = decodedBytes.get();
+        long wire = wireBytes.get();
+        if (decoded == 0) {
+            return;
+        }
+        logger.info("API responses were {} bytes, {} bytes were downloaded. Compression saved {}%.", decoded, wire, (decoded - wire) * 100 / decoded);
+    }
+
+    /**
+     * A response body that is decompressed as it's read, and counts the bytes on both sides.
+     */
+    public static class DecodedStream extends ProxyInputStream {
+
+        /**
+         * Counts the bytes that came over the network.
+         */
+        private final CountingStream wire;
+        /**
+         * How many bytes were read after decompressing.
+         */
+        private long decoded;
+        /**
+         * Was the body already counted?
+         */
+        private boolean counted = false;
+
+        /**
+         * Creates a DecodedStream.
+         *
+         * @param body     The body as it came over the network.
+         * @param encoding The response's Content-Encoding.
+         */
+        private DecodedStream(InputStream body, String encoding) throws IOException {
+            this(new CountingStream(body), encoding);
+        }
+
+        /**
+         * Creates a DecodedStream.
+         *
+         * @param wire     The counted body.
+         * @param encoding The response's Content-Encoding.
+         */
+        private DecodedStream(CountingStream wire, String encoding) throws IOException {
+            super(decoder(wire, encoding));
+            this.wire = wire;
+        }
+
+        /**
+         * Get how many bytes came over the network so far.
+         *
+         * @return The bytes.
+         */
+        public long getWireBytes() {
+            return wire.count;
+        }
+
+        @Override
+        protected void afterRead(int n) {
+            if (n > 0) {
+                decoded += n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!counted) {
+                    counted = true;
+                    wireBytes.addAndGet(wire.count);
+                    decodedBytes.addAndGet(decoded);
+                }
+            }
+        }
+
+        /**
+         * Pick the decompressor for an encoding. Unknown encodings are passed through as they are.
+         *
+         * @param body     The body.
+         * @param encoding The response's Content-Encoding.
+         * @return The stream to read from.
+         */
+        private static InputStream decoder(InputStream body, String encoding) throws IOException {
+            return switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+                case "gzip", "x-gzip" -> new GZIPInputStream(body, 8192);
+                case "deflate" -> inflate(body);
+                case "identity" -> body;
+                default -> {
+                    logger.warn("Unknown Content-Encoding {}, reading the body as it is", encoding);
+                    yield body;
+                }
+            };
+        }
+
+        /**
+         * Read a deflate body. It's supposed to have a zlib header, but some servers send raw deflate data.
+         *
+         * @param body The body.
+         * @return The stream to read from.
+         */
+        private static InputStream inflate(InputStream body) throws IOException {
+            BufferedInputStream buffered = new BufferedInputStream(body, 8192);
+            buffered.mark(2);
+            int first = buffered.read();
+            int second = buffered.read();
+            buffered.reset();
+            boolean zlib = first != -1 && second != -1 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+            return new InflaterInputStream(buffered, new Inflater(!zlib), 8192);
+        }
+    }
+
+    /**
+     * Counts the bytes read from a stream.
+     */
+    private static class CountingStream extends ProxyInputStream {
+
+        /**
+         * How many bytes were read.
+         */
+        private long count;
+
+        /**
+         * Creates a CountingStream.
+         *
+         * @param in The stream to count.
+         */
+        private CountingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        protected void afterRead(int n) {
+            if (n > 0) {
+                count += n;
+            }
+        }
+    }
+}
@@ -0,0 +1,641 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package lol.hyper.customlauncher.tools;
+
+import java.io.*;
+import java.util.Arrays;
+
+public class JSONReader implements Closeable {
+
+    /**
+     * Inside an array, before the first value.
+     */
+    private static final int EMPTY_ARRAY = 0;
+    /**
+     * Inside an array, after a value.
+     */
+    private static final int NONEMPTY_ARRAY = 1;
+    /**
+     * Inside an object, before the first name.
+     */
+    private static final int EMPTY_OBJECT = 2;
+    /**
+     * Inside an object, after a name and before its value.
+     */
+    private static final int DANGLING_NAME = 3;
+    /**
+     * Inside an object, after a value.
+     */
+    private static final int NONEMPTY_OBJECT = 4;
+    /**
+     * Before the top level value.
+     */
+    private static final int EMPTY_DOCUMENT = 5;
+    /**
+     * After the top level value.
+     */
+    private static final int NONEMPTY_DOCUMENT = 6;
+
+    /**
+     * Where the JSON is read from.
+     */
+    private final Reader in;
+    /**
+     * Characters read from the reader that have not been parsed yet.
+     */
+    private final char[] buffer = new char[8192];
+    /**
+     * The next character to parse in the buffer.
+     */
+    private int pos = 0;
+    /**
+     * How many characters in the buffer are valid.
+     */
+    private int limit = 0;
+    /**
+     * How many characters were parsed before the current buffer, for error messages.
+     */
+    private long bufferStart = 0;
+    /**
+     * Reused to build strings and numbers.
+     */
+    private final StringBuilder scratch = new StringBuilder();
+    /**
+     * The arrays and objects we are inside of, innermost last.
+     */
+    private int[] stack = new int[32];
+    /**
+     * How many entries of the stack are used.
+     */
+    private int depth = 0;
+    /**
+     * The next token, if peek already found it.
+     */
+    private Token peeked;
+
+    /**
+     * Creates a JSONReader.
+     *
+     * @param in The JSON to read. This should be buffered or in memory, since it's read in chunks anyway.
+     */
+    public JSONReader(Reader in) {
+        this.in = in;
+        stack[depth++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Get the type of the next token, without reading it.
+     *
+     * @return The next token.
+     */
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int scope = stack[depth - 1];
+        switch (scope) {
+            case EMPTY_ARRAY, NONEMPTY_ARRAY -> {
+                int c = nextNonWhitespace();
+                if (c == -1) {
+                    throw syntaxError("Unexpected end of document");
+                }
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (scope == NONEMPTY_ARRAY) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or ']'");
+                    }
+                } else {
+                    pos--;
+                }
+                stack[depth - 1] = NONEMPTY_ARRAY;
+            }
+            case EMPTY_OBJECT, NONEMPTY_OBJECT -> {
+                int c = nextNonWhitespace();
+                if (c == -1) {
+                    throw syntaxError("Unexpected end of document");
+                }
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                stack[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            }
+            case DANGLING_NAME -> {
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                stack[depth - 1] = NONEMPTY_OBJECT;
+            }
+            case EMPTY_DOCUMENT -> stack[depth - 1] = NONEMPTY_DOCUMENT;
+            default -> {
+                if (nextNonWhitespace() != -1) {
+                    throw syntaxError("Expected the end of the document");
+                }
+                return peeked = Token.END_DOCUMENT;
+            }
+        }
+
+        int c = nextNonWhitespace();
+        if (c == -1) {
+            throw syntaxError("Unexpected end of document");
+        }
+        switch (c) {
+            case '{' -> peeked = Token.BEGIN_OBJECT;
+            case '[' -> peeked = Token.BEGIN_ARRAY;
+            // the opening quote is already read, nextString reads the rest
+            case '"' -> peeked = Token.STRING;
+            case 't', 'f' -> {
+                pos--;
+                peeked = Token.BOOLEAN;
+            }
+            case 'n' -> {
+                pos--;
+                peeked = Token.NULL;
+            }
+            default -> {
+                if (c != '-' && (c < '0' || c > '9')) {
+                    throw syntaxError("Expected a value");
+                }
+                pos--;
+                peeked = Token.NUMBER;
+            }
+        }
+        return peeked;
+    }
+
+    /**
+     * Read the start of an object.
+     */
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    /**
+     * Read the end of an object.
+     */
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    /**
+     * Read the start of an array.
+     */
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    /**
+     * Read the end of an array.
+     */
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * Does the current object or array have more in it?
+     *
+     * @return True if there is another name or value.
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    /**
+     * Read the name of the next value in an object.
+     *
+     * @return The name.
+     */
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * Read a string. Numbers are read as they are written.
+     *
+     * @return The string.
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.NUMBER) {
+            peeked = null;
+            return readLiteral();
+        }
+        expect(Token.STRING);
+        return readString();
+    }
+
+    /**
+     * Read a number as an int. Strings that hold a number are read too, like org.json does.
+     *
+     * @return The number.
+     */
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value != (int) value) {
+            throw syntaxError(value + " is not an int");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Read a number as a long. Strings that hold a number are read too, like org.json does.
+     *
+     * @return The number.
+     */
+    public long nextLong() throws IOException {
+        String number = nextNumber();
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException exception) {
+            // something like 1.0 or 1e3
+            double value = parseDouble(number);
+            if (value != (long) value) {
+                throw syntaxError(number + " is not a whole number");
+            }
+            return (long) value;
+        }
+    }
+
+    /**
+     * Read a number as a double. Strings that hold a number are read too, like org.json does.
+     *
+     * @return The number.
+     */
+    public double nextDouble() throws IOException {
+        return parseDouble(nextNumber());
+    }
+
+    /**
+     * Read a boolean.
+     *
+     * @return The boolean.
+     */
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        String literal = readLiteral();
+        return switch (literal) {
+            case "true" -> true;
+            case "false" -> false;
+            default -> throw syntaxError("Expected a boolean but was " + literal);
+        };
+    }
+
+    /**
+     * Read a null.
+     */
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        String literal = readLiteral();
+        if (!literal.equals("null")) {
+            throw syntaxError("Expected null but was " + literal);
+        }
+    }
+
+    /**
+     * Skip the next value, and everything inside it if it's an object or array.
+     */
+    public void skipValue() throws IOException {
+        int skipDepth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT -> {
+                    beginObject();
+                    skipDepth++;
+                }
+                case BEGIN_ARRAY -> {
+                    beginArray();
+                    skipDepth++;
+                }
+                case END_OBJECT -> {
+                    endObject();
+                    skipDepth--;
+                }
+                case END_ARRAY -> {
+                    endArray();
+                    skipDepth--;
+                }
+                case NAME, STRING -> {
+                    peeked = null;
+                    skipString();
+                }
+                case NUMBER -> nextDouble();
+                case BOOLEAN -> nextBoolean();
+                case NULL -> nextNull();
+                case END_DOCUMENT -> throw syntaxError("Nothing left to skip");
+            }
+        } while (skipDepth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Read a number, or a string holding one.
+     *
+     * @return The number as it was written.
+     */
+    private String nextNumber() throws IOException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            peeked = null;
+            return readString().trim();
+        }
+        expect(Token.NUMBER);
+        return readLiteral();
+    }
+
+    /**
+     * Parse a number we read.
+     *
+     * @param number The number.
+     * @return The number as a double.
+     */
+    private double parseDouble(String number) throws IOException {
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException exception) {
+            throw syntaxError(number + " is not a number");
+        }
+    }
+
+    /**
+     * Make sure the next token is what we want, and mark it as read.
+     *
+     * @param expected The token we want.
+     */
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    /**
+     * Go into an object or array.
+     *
+     * @param scope The scope to push.
+     */
+    private void push(int scope) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = scope;
+    }
+
+    /**
+     * Read the rest of a string, after its opening quote.
+     *
+     * @return The string.
+     */
+    private String readString() throws IOException {
+        scratch.setLength(0);
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    scratch.append(buffer, start, pos - start - 1);
+                    return scratch.toString();
+                }
+                if (c == '\\') {
+                    scratch.append(buffer, start, pos - start - 1);
+                    scratch.append(readEscape());
+                    start = pos;
+                }
+            }
+            scratch.append(buffer, start, pos - start);
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    /**
+     * Skip the rest of a string, after its opening quote.
+     */
+    private void skipString() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    return;
+                }
+                if (c == '\\') {
+                    readEscape();
+                }
+            }
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    /**
+     * Read an escape in a string, after its backslash.
+     *
+     * @return The escaped character.
+     */
+    private char readEscape() throws IOException {
+        int c = nextChar();
+        return switch (c) {
+            case '"', '\\', '/' -> (char) c;
+            case 'b' -> '\b';
+            case 'f' -> '\f';
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            case 't' -> '\t';
+            case 'u' -> {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(nextChar(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                yield (char) value;
+            }
+            default -> throw syntaxError("Invalid escape");
+        };
+    }
+
+    /**
+     * Read a number, true, false or null.
+     *
+     * @return The literal as it was written.
+     */
+    private String readLiteral() throws IOException {
+        scratch.setLength(0);
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                    scratch.append(buffer, start, pos - start);
+                    return scratch.toString();
+                }
+                pos++;
+            }
+            scratch.append(buffer, start, pos - start);
+            if (!fill()) {
+                return scratch.toString();
+            }
+        }
+    }
+
+    /**
+     * Read the next character that is not whitespace.
+     *
+     * @return The character, or -1 at the end of the input.
+     */
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            int c = nextChar();
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Read the next character.
+     *
+     * @return The character, or -1 at the end of the input.
+     */
+    private int nextChar() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    /**
+     * Read more of the input into the buffer. This is only called once the buffer is used up,
+     * so the last character read can still be pushed back.
+     *
+     * @return False at the end of the input.
+     */
+    private boolean fill() throws IOException {
+        bufferStart += limit;
+        pos = 0;
+        limit = 0;
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read == -1) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    /**
+     * Make an exception for bad JSON.
+     *
+     * @param message What went wrong.
+     * @return The exception.
+     */
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at character " + (bufferStart + pos));
+    }
+
+    /**
+     * What the next part of the JSON is.
+     */
+    public enum Token {
+        /**
+         * The start of an object.
+         */
+        BEGIN_OBJECT,
+        /**
+         * The end of an object.
+         */
+        END_OBJECT,
+        /**
+         * The start of an array.
+         */
+        BEGIN_ARRAY,
+        /**
+         * The end of an array.
+         */
+        END_ARRAY,
+        /**
+         * The name of a value in an object.
+         */
+        NAME,
+        /**
+         * A string.
+         */
+        STRING,
+        /**
+         * A number.
+         */
+        NUMBER,
+        /**
+         * True or false.
+         */
+        BOOLEAN,
+        /**
+         * A null.
+         */
+        NULL,
+        /**
+         * The end of the input.
+         */
+        END_DOCUMENT
+    }
+
+    /**
+     * Reads JSON straight into something, without building a JSONObject first.
+     *
+     * @param <T> What the JSON is read into.
+     */
+    @FunctionalInterface
+    public interface Binder<T> {
+
+        /**
+         * Read the JSON.
+         *
+         * @param reader The reader, before the top level value.
+         * @return What was read.
+         */
+        T bind(JSONReader reader) throws IOException;
+    }
+}
@@ -17,21 +17,25 @@
 
 package lol.hyper.customlauncher.tools;
 
-import lol.hyper.customlauncher.CustomLauncherRewrite;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class JSONUtils {
     /**
@@ -39,9 +43,21 @@ public class JSONUtils {
      */
     private static final Logger logger = LogManager.getLogger(JSONUtils.class);
     /**
-     * HttpClient for requests.
+     * Responses we already have, so unchanged data is not downloaded again.
      */
-    private static final HttpClient client = HttpClient.newHttpClient();
+    private static final ResponseCache responseCache = new ResponseCache(new File("config", "http-cache"));
+    /**
+     * Requests that are being sent right now, by URL. Anyone else asking for the same URL waits on these.
+     */
+    private static final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    /**
+     * Reads response bodies. Reading blocks until the server sends the rest, so it can't happen on the HttpClient's threads.
+     */
+    private static final ExecutorService readers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "JSONUtils-Reader");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Read contents of a file.
@@ -68,17 +84,196 @@ public class JSONUtils {
      * @param file The file to write to.
      */
     public static void writeFile(Object data, File file) {
-        logger.info("Writing file: {}", file.getAbsolutePath());
         try {
-            FileWriter writer = new FileWriter(file);
-            writer.write(data.toString());
-            writer.close();
+            writeFileOrThrow(data, file);
         } catch (IOException exception) {
             logger.error("Unable to write file {}", file, exception);
             new ExceptionWindow(exception);
         }
     }
 
+    /**
+     * Write a file, leaving it to the caller to handle errors. Use this where there might not be
+     * a screen to show an error on, like the headless updater.
+     *
+     * @param data The data to write. This will be turned into a String.
+     * @param file The file to write to.
+     */
+    public static void writeFileOrThrow(Object data, File file) throws IOException {
+        logger.info("Writing file: {}", file.getAbsolutePath());
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(data.toString());
+        }
+    }
+
+    /**
+     * Send a request as interactive traffic, so downloads hold off until it's answered.
+     *
+     * @param request The request to send.
+     * @return The response.
+     */
+    private static HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        TrafficShaper trafficShaper = TrafficShaper.getInstance();
+        trafficShaper.beginInteractive();
+        AtomicLong bytes = new AtomicLong();
+        try {
+            return SharedHttpClient.get().send(request, ContentEncoding.ofString(bytes::set));
+        } finally {
+            trafficShaper.endInteractive(bytes.get());
+        }
+    }
+
+    /**
+     * Get the body of a URL, waiting for it.
+     *
+     * @param url    The URL to request.
+     * @param parser Reads the body.
+     * @return The parsed body. Returns null if the server sent an error.
+     * @see #requestCachedAsync(String, BodyParser)
+     */
+    private static <T> T requestCached(String url, BodyParser<T> parser) throws IOException, InterruptedException {
+        try {
+            return requestCachedAsync(url, parser).get();
+        } catch (ExecutionException exception) {
+            throw new IOException("Request to " + url + " failed", exception.getCause());
+        }
+    }
+
+    /**
+     * Get the body of a URL, using the cached copy if it's still fresh. Otherwise, the server is
+     * asked if it changed, and only sends the body if it did. If the same URL is already being
+     * requested, this waits for that request and uses its response instead of sending another.
+     *
+     * @param url    The URL to request.
+     * @param parser Reads the body. A body is only cached if this can read it.
+     * @return The parsed body. This is null if the server sent an error.
+     */
+    private static <T> CompletableFuture<T> requestCachedAsync(String url, BodyParser<T> parser) {
+        ResponseCache.Entry cached = responseCache.get(url);
+        if (cached != null && cached.isFresh()) {
+            logger.info("Using cached response for {}", url);
+            return CompletableFuture.completedFuture(cached).thenApply(entry -> parse(parser, entry.body()));
+        }
+
+        Flight flight = new Flight();
+        Flight leader = inFlight.putIfAbsent(url, flight);
+        if (leader != null) {
+            if (!leader.join()) {
+                // that request is already reading its body without keeping it, so send our own
+                return requestCachedAsync(url, parser);
+            }
+            logger.info("Waiting on the request already being sent to {}", url);
+            return leader.response.thenApply(entry -> entry == null ? null : parse(parser, entry.body()));
+        }
+
+        // a request that just finished might have left a response we can use
+        ResponseCache.Entry latest = responseCache.get(url);
+        CompletableFuture<T> result;
+        if (latest != null && latest.isFresh()) {
+            flight.response.complete(latest);
+            result = CompletableFuture.completedFuture(latest).thenApply(entry -> parse(parser, entry.body()));
+        } else {
+            result = fetch(url, latest, parser, flight);
+        }
+        result.whenComplete((parsed, exception) -> {
+            if (exception != null) {
+                flight.response.completeExceptionally(exception);
+            }
+            inFlight.remove(url, flight);
+        });
+        return result;
+    }
+
+    /**
+     * Send a request and share its response with anyone waiting on it.
+     *
+     * @param url    The URL to request.
+     * @param cached The cached response, or null if there is none.
+     * @param parser Reads the body.
+     * @param flight Gets the response, or null if the server sent an error.
+     * @return The parsed body. This is null if the server sent an error.
+     */
+    private static <T> CompletableFuture<T> fetch(String url, ResponseCache.Entry cached, BodyParser<T> parser, Flight flight) {
+        HttpRequest.Builder request = ContentEncoding.accept(SharedHttpClient.newRequest(URI.create(url)))
+                .header("Accept", "application/json")
+                .GET();
+        if (cached != null) {
+            cached.addValidators(request);
+        }
+
+        TrafficShaper trafficShaper = TrafficShaper.getInstance();
+        trafficShaper.beginInteractive();
+        return SharedHttpClient.get().sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream())
+                .whenComplete((response, exception) -> {
+                    if (exception != null) {
+                        trafficShaper.endInteractive(0);
+                    }
+                })
+                .thenApplyAsync(response -> {
+                    long bytes = 0;
+                    try (ContentEncoding.DecodedStream body = ContentEncoding.decode(response)) {
+                        try {
+                            return read(url, cached, parser, flight, response, body);
+                        } finally {
+                            bytes = body.getWireBytes();
+                        }
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    } finally {
+                        trafficShaper.endInteractive(bytes);
+                    }
+                }, readers);
+    }
+
+    /**
+     * Read a response. The body is only kept if it can be cached or someone else is waiting on it,
+     * otherwise it's parsed straight from the network.
+     *
+     * @param url      The URL that was requested.
+     * @param cached   The cached response, or null if there is none.
+     * @param parser   Reads the body.
+     * @param flight   Gets the response, or null if it was not kept.
+     * @param response The response.
+     * @param body     The decompressed body.
+     * @return The parsed body. This is null if the server sent an error.
+     */
+    private static <T> T read(String url, ResponseCache.Entry cached, BodyParser<T> parser, Flight flight, HttpResponse<InputStream> response, InputStream body) throws IOException {
+        if (response.statusCode() == 304 && cached != null) {
+            ResponseCache.Entry entry = responseCache.revalidated(url, cached);
+            flight.response.complete(entry);
+            return parser.parse(new StringReader(entry.body()));
+        }
+        if (response.statusCode() != 200) {
+            logger.error("HTTP status code {} for {}", response.statusCode(), url);
+            flight.response.complete(null);
+            return null;
+        }
+        if (!responseCache.shouldKeep(url, response.headers()) && flight.stream(url)) {
+            T parsed = parser.parse(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+            flight.response.complete(null);
+            return parsed;
+        }
+        String text = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        T parsed = parser.parse(new StringReader(text));
+        flight.response.complete(responseCache.put(url, text, response.headers()));
+        return parsed;
+    }
+
+    /**
+     * Parse a body inside a future, where checked exceptions can't be thrown.
+     *
+     * @param parser Reads the body.
+     * @param body   The body.
+     * @return The parsed body.
+     */
+    private static <T> T parse(BodyParser<T> parser, String body) {
+        try {
+            return parser.parse(new StringReader(body));
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
     /**
      * Get a JSONObject from a URL.
      *
@@ -88,27 +283,28 @@ public class JSONUtils {
     public static JSONObject requestJSON(String url) {
         logger.info("Fetching JSONObject from {}", url);
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .header("Accept", "application/json")
-                    .header("User-Agent", CustomLauncherRewrite.getUserAgent())
-                    .GET()
-                    .build();
-
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == 200) {
-                return new JSONObject(response.body());
-            } else {
-                logger.error("HTTP status code {} for {} in getting JSONObject", response.statusCode(), url);
-                return null;
-            }
+            return requestCached(url, body -> new JSONObject(new JSONTokener(body)));
         } catch (Exception exception) {
             logger.error("Unable to request JSONObject", exception);
             return null;
         }
     }
 
+    /**
+     * Get a JSONObject from a URL, without waiting for it. This is safe to call from the Swing thread,
+     * but whatever is done with the result has to go back to it with {@link javax.swing.SwingUtilities#invokeLater(Runnable)}.
+     *
+     * @param url The URL to get JSON from.
+     * @return The response JSONObject. This is null if there was some issue.
+     */
+    public static CompletableFuture<JSONObject> requestJSONAsync(String url) {
+        logger.info("Fetching JSONObject from {}", url);
+        return requestCachedAsync(url, body -> new JSONObject(new JSONTokener(body))).exceptionally(exception -> {
+            logger.error("Unable to request JSONObject", exception);
+            return null;
+        });
+    }
+
     /**
      * Get local TTR companion data.
      *
@@ -119,15 +315,13 @@ public class JSONUtils {
     public static JSONObject requestCompanionData(String url, String session) {
         logger.info("Fetching companion data from {}", url);
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
+            HttpRequest request = ContentEncoding.accept(SharedHttpClient.newRequest(URI.create(url)))
                     .header("Accept", "application/json")
-                    .header("User-Agent", CustomLauncherRewrite.getUserAgent())
                     .header("Authorization", session)
                     .GET()
                     .build();
 
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = send(request);
 
             if (response.statusCode() == 200) {
                 return new JSONObject(response.body());
@@ -151,24 +345,107 @@ public class JSONUtils {
     public static JSONArray requestJSONArray(String url) {
         logger.info("Fetching JSONArray from {}", url);
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .header("Accept", "application/json")
-                    .header("User-Agent", CustomLauncherRewrite.getUserAgent())
-                    .GET()
-                    .build();
-
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == 200) {
-                return new JSONArray(response.body());
-            } else {
-                logger.error("HTTP status code {} for {} in getting JSONArray", response.statusCode(), url);
-                return null;
-            }
+            return requestCached(url, body -> new JSONArray(new JSONTokener(body)));
         } catch (Exception exception) {
             logger.error("Unable to request JSONArray", exception);
             return null;
         }
     }
+
+    /**
+     * Read JSON from a URL straight into the launcher's own types. Unlike {@link #requestJSON(String)},
+     * no JSONObject is built, so big responses only cost what is kept from them.
+     *
+     * @param url    The URL to get JSON from.
+     * @param binder Reads the JSON.
+     * @return What the binder read. Returns null if there was some issue.
+     */
+    public static <T> T requestJSON(String url, JSONReader.Binder<T> binder) {
+        logger.info("Streaming JSON from {}", url);
+        try {
+            return requestCached(url, body -> binder.bind(new JSONReader(body)));
+        } catch (Exception exception) {
+            logger.error("Unable to read JSON from {}", url, exception);
+            return null;
+        }
+    }
+
+    /**
+     * Read JSON from a URL straight into the launcher's own types, without waiting for it.
+     * Whatever is done with the result has to go back to the Swing thread.
+     *
+     * @param url    The URL to get JSON from.
+     * @param binder Reads the JSON.
+     * @return What the binder read. This is null if there was some issue.
+     */
+    public static <T> CompletableFuture<T> requestJSONAsync(String url, JSONReader.Binder<T> binder) {
+        logger.info("Streaming JSON from {}", url);
+        return requestCachedAsync(url, body -> binder.bind(new JSONReader(body))).exceptionally(exception -> {
+            logger.error("Unable to read JSON from {}", url, exception);
+            return null;
+        });
+    }
+
+    /**
+     * A request being sent, that others asking for the same URL can wait on.
+     */
+    private static class Flight {
+        /**
+         * Completes with the response, or null if there was no response to share.
+         */
+        private final CompletableFuture<ResponseCache.Entry> response = new CompletableFuture<>();
+        /**
+         * How many other requests are waiting on this one.
+         */
+        private int waiters;
+        /**
+         * If the body is being read without keeping a copy.
+         */
+        private boolean streaming;
+
+        /**
+         * Wait on this request.
+         *
+         * @return False if the body is not being kept, so there will be nothing to share.
+         */
+        private synchronized boolean join() {
+            if (streaming) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        /**
+         * Read the body without keeping a copy. Nobody can wait on this request after this.
+         *
+         * @param url The URL that was requested.
+         * @return False if someone is already waiting, and the body has to be kept for them.
+         */
+        private synchronized boolean stream(String url) {
+            if (waiters > 0) {
+                return false;
+            }
+            streaming = true;
+            inFlight.remove(url, this);
+            return true;
+        }
+    }
+
+    /**
+     * Reads a response body.
+     *
+     * @param <T> What the body is read into.
+     */
+    @FunctionalInterface
+    private interface BodyParser<T> {
+
+        /**
+         * Read the body.
+         *
+         * @param body The body.
+         * @return What was read.
+         */
+        T parse(Reader body) throws IOException;
+    }
 }
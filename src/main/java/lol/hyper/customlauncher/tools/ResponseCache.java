@@ -0,0 +1,283 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.tools;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+public class ResponseCache {
+
+    /**
+     * How long responses from each endpoint can be used without asking the server again, by URL prefix.
+     * The longest matching prefix wins. Anything not listed is checked with the server after {@link #MIN_TTL},
+     * which still saves the download when it has not changed.
+     */
+    private static final Map<String, Duration> TTLS = new LinkedHashMap<>();
+
+    static {
+        // ToonHQ's district and cog lists only change when TTR adds something
+        TTLS.put("https://toonhq.org/api/districts/", Duration.ofHours(12));
+        TTLS.put("https://toonhq.org/api/cogs/", Duration.ofHours(12));
+        // a release note never changes once it's posted, the list of them changes a few times a week
+        TTLS.put("https://www.toontownrewritten.com/api/releasenotes/", Duration.ofDays(7));
+        TTLS.put("https://www.toontownrewritten.com/api/releasenotes", Duration.ofMinutes(30));
+        // the trackers refresh on a timer, so these only save a little
+        TTLS.put("https://toonhq.org/api/invasions/", Duration.ofSeconds(10));
+        TTLS.put("https://www.toontownrewritten.com/api/fieldoffices", Duration.ofSeconds(10));
+        TTLS.put("https://www.toontownrewritten.com/api/population", Duration.ofSeconds(10));
+    }
+
+    /**
+     * Every response can be used for at least this long. This covers the same thing being asked for
+     * a few times in a row, like a button being clicked again.
+     */
+    private static final Duration MIN_TTL = Duration.ofSeconds(2);
+    /**
+     * Only responses that can be used for at least this long are saved to disk. The trackers are
+     * polled every few seconds, so writing them out would only wear the disk.
+     */
+    private static final Duration PERSIST_TTL = Duration.ofMinutes(30);
+    /**
+     * The most responses to keep in memory. The least recently used one is dropped after this.
+     */
+    private static final int MAX_ENTRIES = 128;
+    /**
+     * The ResponseCache logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * Where responses with a long TTL are saved, so they last between launches.
+     */
+    private final File cacheFolder;
+    /**
+     * The responses we have, keyed by URL, in the order they were last used.
+     */
+    private final Map<String, Entry> entries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    });
+
+    /**
+     * Creates a ResponseCache.
+     *
+     * @param cacheFolder Where responses are saved on disk.
+     */
+    public ResponseCache(File cacheFolder) {
+        this.cacheFolder = cacheFolder;
+    }
+
+    /**
+     * Get the cached response for a URL. This checks memory first, then disk.
+     *
+     * @param url The URL.
+     * @return The cached response, or null if there is none.
+     */
+    public Entry get(String url) {
+        Entry entry = entries.get(url);
+        if (entry != null) {
+            return entry;
+        }
+        if (!isPersisted(url)) {
+            return null;
+        }
+        File file = getFile(url);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(JSONUtils.readFile(file));
+            // two URLs could share a file name, make sure this is the one we want
+            if (!url.equals(json.optString("url"))) {
+                return null;
+            }
+            entry = new Entry(json.getString("body"), json.optString("etag", null), json.optString("lastModified", null), json.getLong("fetched"), getMinTTL(url));
+            entries.put(url, entry);
+            return entry;
+        } catch (JSONException exception) {
+            logger.warn("Cached response for {} is invalid, ignoring it", url, exception);
+            return null;
+        }
+    }
+
+    /**
+     * Check if a response is worth keeping. It has to either have a TTL, or something we can ask the server
+     * about next time. Anything else would never be used again, so its body does not need to be kept around.
+     *
+     * @param url     The URL.
+     * @param headers The response's headers.
+     * @return True if the response should be saved.
+     */
+    public boolean shouldKeep(String url, HttpHeaders headers) {
+        return !getTTL(url).isZero() || headers.firstValue("ETag").isPresent() || headers.firstValue("Last-Modified").isPresent();
+    }
+
+    /**
+     * Save a response the server sent.
+     *
+     * @param url     The URL.
+     * @param body    The response body.
+     * @param headers The response's headers.
+     * @return The saved response.
+     */
+    public Entry put(String url, String body, HttpHeaders headers) {
+        String etag = headers.firstValue("ETag").orElse(null);
+        String lastModified = headers.firstValue("Last-Modified").orElse(null);
+        Entry entry = new Entry(body, etag, lastModified, System.currentTimeMillis(), getMinTTL(url));
+        entries.put(url, entry);
+        save(url, entry);
+        return entry;
+    }
+
+    /**
+     * Record that the server said our cached response is still good.
+     *
+     * @param url   The URL.
+     * @param entry The cached response.
+     * @return The cached response, fresh again.
+     */
+    public Entry revalidated(String url, Entry entry) {
+        Entry fresh = new Entry(entry.body(), entry.etag(), entry.lastModified(), System.currentTimeMillis(), entry.ttl());
+        entries.put(url, fresh);
+        save(url, fresh);
+        return fresh;
+    }
+
+    /**
+     * Write a response to disk, if the endpoint has a long TTL.
+     *
+     * @param url   The URL.
+     * @param entry The response.
+     */
+    private void save(String url, Entry entry) {
+        if (!isPersisted(url)) {
+            return;
+        }
+        if (!cacheFolder.exists() && !cacheFolder.mkdirs()) {
+            logger.warn("Unable to create response cache folder {}", cacheFolder.getAbsolutePath());
+            return;
+        }
+        JSONObject json = new JSONObject();
+        json.put("url", url);
+        json.put("body", entry.body());
+        json.put("etag", entry.etag());
+        json.put("lastModified", entry.lastModified());
+        json.put("fetched", entry.fetched());
+        try {
+            JSONUtils.writeFileOrThrow(json, getFile(url));
+        } catch (IOException exception) {
+            logger.warn("Unable to save cached response for {}", url, exception);
+        }
+    }
+
+    /**
+     * Check if a URL's responses are saved to disk.
+     *
+     * @param url The URL.
+     * @return True if the endpoint's TTL is at least {@link #PERSIST_TTL}.
+     */
+    private static boolean isPersisted(String url) {
+        return getTTL(url).compareTo(PERSIST_TTL) >= 0;
+    }
+
+    /**
+     * Get the file a URL's response is saved to.
+     *
+     * @param url The URL.
+     * @return The file.
+     */
+    private File getFile(String url) {
+        return new File(cacheFolder, UUID.nameUUIDFromBytes(url.getBytes(StandardCharsets.UTF_8)) + ".json");
+    }
+
+    /**
+     * Get how long a URL's response can be used without asking the server, and never less than {@link #MIN_TTL}.
+     *
+     * @param url The URL.
+     * @return The TTL.
+     */
+    private static Duration getMinTTL(String url) {
+        Duration ttl = getTTL(url);
+        return ttl.compareTo(MIN_TTL) < 0 ? MIN_TTL : ttl;
+    }
+
+    /**
+     * Get how long a URL's response can be used without asking the server.
+     *
+     * @param url The URL.
+     * @return The TTL, zero if it should always be checked.
+     */
+    private static Duration getTTL(String url) {
+        String match = null;
+        for (String prefix : TTLS.keySet()) {
+            if (url.startsWith(prefix) && (match == null || prefix.length() > match.length())) {
+                match = prefix;
+            }
+        }
+        return match == null ? Duration.ZERO : TTLS.get(match);
+    }
+
+    /**
+     * A cached response.
+     *
+     * @param body         The response body.
+     * @param etag         The response's ETag, or null.
+     * @param lastModified The response's Last-Modified, or null.
+     * @param fetched      When the server last sent or confirmed this, in epoch millis.
+     * @param ttl          How long this can be used without asking the server.
+     */
+    public record Entry(String body, String etag, String lastModified, long fetched, Duration ttl) {
+
+        /**
+         * Can this be used without asking the server?
+         *
+         * @return True if it's within its TTL.
+         */
+        public boolean isFresh() {
+            return System.currentTimeMillis() - fetched < ttl.toMillis();
+        }
+
+        /**
+         * Add headers that ask the server to only send the body if it changed.
+         *
+         * @param request The request to add to.
+         */
+        public void addValidators(HttpRequest.Builder request) {
+            if (etag != null) {
+                request.header("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                request.header("If-Modified-Since", lastModified);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.tools;
+
+import lol.hyper.customlauncher.CustomLauncherRewrite;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SharedHttpClient {
+
+    /**
+     * How long to wait for a connection to open.
+     */
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    /**
+     * How long to wait for a response to start. This does not limit how long a body takes to download.
+     */
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    /**
+     * The most threads the client uses to handle responses.
+     */
+    private static final int MAX_THREADS = 4;
+    /**
+     * The client every part of the launcher uses. Sharing it means connections to a host
+     * are kept open and reused, instead of every request doing a new TLS handshake.
+     */
+    private static final HttpClient client = createClient();
+
+    /**
+     * Get the launcher's HttpClient.
+     *
+     * @return The client.
+     */
+    public static HttpClient get() {
+        return client;
+    }
+
+    /**
+     * Start a request with the launcher's User-Agent and the default timeout.
+     *
+     * @param uri The URI to request.
+     * @return The request builder.
+     */
+    public static HttpRequest.Builder newRequest(URI uri) {
+        return HttpRequest.newBuilder()
+                .uri(uri)
+                .header("User-Agent", CustomLauncherRewrite.getUserAgent())
+                .timeout(REQUEST_TIMEOUT);
+    }
+
+    /**
+     * Build the shared client. HTTP/2 is used when the server supports it, which lets
+     * requests to the same host share one connection.
+     *
+     * @return The client.
+     */
+    private static HttpClient createClient() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "HttpClient-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // don't keep idle threads around when nothing is being requested
+        executor.allowCoreThreadTimeOut(true);
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+}
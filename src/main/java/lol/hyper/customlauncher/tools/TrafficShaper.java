@@ -0,0 +1,287 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.tools;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public final class TrafficShaper {
+
+    /**
+     * The shaper every request goes through.
+     */
+    private static final TrafficShaper INSTANCE = new TrafficShaper();
+    /**
+     * How long traffic counts as active after it was last seen. Lower priorities wait this long after higher ones go quiet.
+     */
+    private static final long ACTIVE_WINDOW = TimeUnit.MILLISECONDS.toNanos(250);
+    /**
+     * The longest a single interactive request can hold back other traffic.
+     */
+    private static final long MAX_INTERACTIVE_HOLD = TimeUnit.SECONDS.toNanos(2);
+    /**
+     * The longest we wait before checking again.
+     */
+    private static final long MAX_WAIT = TimeUnit.MILLISECONDS.toNanos(250);
+    /**
+     * The TrafficShaper logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * Limits all traffic.
+     */
+    private final Bucket total = new Bucket();
+    /**
+     * Limits background traffic on top of the total limit.
+     */
+    private final Bucket background = new Bucket();
+    /**
+     * When each priority last moved any bytes, in nanoseconds.
+     */
+    private final long[] lastActive = new long[Priority.values().length];
+    /**
+     * How many interactive requests are waiting on a response.
+     */
+    private int interactiveRequests = 0;
+    /**
+     * When the oldest interactive request that is still waiting started, in nanoseconds.
+     */
+    private long interactiveStarted;
+
+    /**
+     * Creates a TrafficShaper, with nothing limited. Everything else should use {@link #getInstance()}.
+     */
+    TrafficShaper() {
+        // start out with every priority already quiet
+        Arrays.fill(lastActive, System.nanoTime() - ACTIVE_WINDOW);
+    }
+
+    /**
+     * Get the shaper every request goes through.
+     *
+     * @return The shaper.
+     */
+    public static TrafficShaper getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the bandwidth limits.
+     *
+     * @param totalBytesPerSecond      The limit for all traffic, 0 for no limit.
+     * @param backgroundBytesPerSecond The limit for background traffic, 0 for no limit.
+     */
+    public synchronized void setLimits(long totalBytesPerSecond, long backgroundBytesPerSecond) {
+        if (total.rate == Math.max(0, totalBytesPerSecond) && background.rate == Math.max(0, backgroundBytesPerSecond)) {
+            return;
+        }
+        long now = System.nanoTime();
+        total.setRate(totalBytesPerSecond, now);
+        background.setRate(backgroundBytesPerSecond, now);
+        logger.info("Bandwidth limits set to {} B/s total and {} B/s for background traffic", totalBytesPerSecond, backgroundBytesPerSecond);
+        notifyAll();
+    }
+
+    /**
+     * Mark that an interactive request was sent. Patch and background traffic hold off until it's answered,
+     * so the response comes back quickly.
+     */
+    public synchronized void beginInteractive() {
+        if (interactiveRequests == 0) {
+            interactiveStarted = System.nanoTime();
+        }
+        interactiveRequests++;
+    }
+
+    /**
+     * Mark that an interactive request was answered.
+     *
+     * @param bytes The size of the response.
+     */
+    public synchronized void endInteractive(long bytes) {
+        interactiveRequests = Math.max(0, interactiveRequests - 1);
+        long now = System.nanoTime();
+        lastActive[Priority.INTERACTIVE.ordinal()] = now;
+        // interactive traffic never waits, but it still uses up the total limit
+        total.take(bytes, now);
+        notifyAll();
+    }
+
+    /**
+     * Wait until some bytes can be read. Higher priority traffic goes first, and
+     * everything stays under the limits.
+     *
+     * @param priority The traffic's priority.
+     * @param bytes    How many bytes were just read.
+     */
+    public void acquire(Priority priority, long bytes) throws InterruptedIOException {
+        if (bytes <= 0) {
+            return;
+        }
+        if (priority == Priority.INTERACTIVE) {
+            synchronized (this) {
+                long now = System.nanoTime();
+                lastActive[priority.ordinal()] = now;
+                total.take(bytes, now);
+            }
+            return;
+        }
+        synchronized (this) {
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    long wait = getWait(priority, now);
+                    if (wait <= 0) {
+                        lastActive[priority.ordinal()] = now;
+                        total.take(bytes, now);
+                        if (priority == Priority.BACKGROUND) {
+                            background.take(bytes, now);
+                        }
+                        return;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, Math.min(wait, MAX_WAIT));
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+            }
+        }
+    }
+
+    /**
+     * Work out how long traffic has to wait before it can go.
+     *
+     * @param priority The traffic's priority.
+     * @param now      The current time in nanoseconds.
+     * @return How long to wait in nanoseconds, 0 or less to go now.
+     */
+    private long getWait(Priority priority, long now) {
+        long wait = 0;
+        // let higher priority traffic finish first
+        for (Priority higher : Priority.values()) {
+            if (higher.ordinal() >= priority.ordinal()) {
+                break;
+            }
+            long quietAt = lastActive[higher.ordinal()] + ACTIVE_WINDOW;
+            if (higher == Priority.INTERACTIVE && interactiveRequests > 0) {
+                quietAt = Math.max(quietAt, interactiveStarted + MAX_INTERACTIVE_HOLD);
+            }
+            wait = Math.max(wait, quietAt - now);
+        }
+        wait = Math.max(wait, total.getWait(now));
+        if (priority == Priority.BACKGROUND) {
+            wait = Math.max(wait, background.getWait(now));
+        }
+        return wait;
+    }
+
+    /**
+     * How important some traffic is. Higher priorities go first.
+     */
+    public enum Priority {
+        /**
+         * Things the user is waiting on, like API calls and logging in.
+         */
+        INTERACTIVE,
+        /**
+         * Game files the user needs to play, and launcher updates.
+         */
+        PATCH,
+        /**
+         * Game files downloaded ahead of time.
+         */
+        BACKGROUND
+    }
+
+    /**
+     * A token bucket. Bytes can be taken even if there are not enough tokens,
+     * which puts the bucket in debt until it refills.
+     */
+    private static class Bucket {
+
+        /**
+         * How many bytes the bucket refills per second, 0 for no limit.
+         */
+        private long rate;
+        /**
+         * How many bytes can be taken right now.
+         */
+        private double tokens;
+        /**
+         * When the bucket was last refilled, in nanoseconds.
+         */
+        private long lastRefill;
+
+        /**
+         * Change how fast the bucket refills. The bucket starts full.
+         *
+         * @param rate How many bytes to refill per second, 0 for no limit.
+         * @param now  The current time in nanoseconds.
+         */
+        void setRate(long rate, long now) {
+            this.rate = Math.max(0, rate);
+            this.tokens = this.rate;
+            this.lastRefill = now;
+        }
+
+        /**
+         * Take bytes from the bucket.
+         *
+         * @param bytes How many bytes to take.
+         * @param now   The current time in nanoseconds.
+         */
+        void take(long bytes, long now) {
+            if (rate <= 0) {
+                return;
+            }
+            refill(now);
+            tokens -= bytes;
+        }
+
+        /**
+         * Get how long until the bucket is out of debt.
+         *
+         * @param now The current time in nanoseconds.
+         * @return How long to wait in nanoseconds, 0 if bytes can be taken now.
+         */
+        long getWait(long now) {
+            if (rate <= 0) {
+                return 0;
+            }
+            refill(now);
+            if (tokens >= 0) {
+                return 0;
+            }
+            return (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / rate);
+        }
+
+        /**
+         * Add the tokens that built up since the last refill. The bucket holds at most one second of bytes.
+         *
+         * @param now The current time in nanoseconds.
+         */
+        private void refill(long now) {
+            tokens = Math.min(rate, tokens + (now - lastRefill) * (double) rate / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+        }
+    }
+}
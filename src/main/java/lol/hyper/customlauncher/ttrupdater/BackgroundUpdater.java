@@ -0,0 +1,100 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.ConfigHandler;
+import lol.hyper.customlauncher.tools.TrafficShaper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public final class BackgroundUpdater extends Thread {
+
+    /**
+     * The background update that is running, if any.
+     */
+    private static volatile BackgroundUpdater current;
+    /**
+     * The BackgroundUpdater logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * The patch manifest from the last login.
+     */
+    private final String manifest;
+    /**
+     * Does the actual updating.
+     */
+    private final UpdateEngine updateEngine;
+
+    /**
+     * Creates a BackgroundUpdater. This checks the install against the manifest from the last login,
+     * so that the check after logging in has little left to do.
+     *
+     * @param configHandler The config to read settings from.
+     */
+    public BackgroundUpdater(ConfigHandler configHandler) {
+        this.manifest = configHandler.getLastManifest();
+        // downloads as background traffic, so the launcher stays out of the way
+        this.updateEngine = UpdateEngine.fromConfig(configHandler, TrafficShaper.Priority.BACKGROUND, false);
+        setName("BackgroundUpdater");
+        setPriority(Thread.MIN_PRIORITY);
+        // the journal cleans up after us if the launcher is closed mid update
+        setDaemon(true);
+    }
+
+    /**
+     * Run the background update.
+     */
+    public void run() {
+        current = this;
+        logger.info("Starting background update using {}", manifest);
+        long startTime = System.nanoTime();
+        try {
+            UpdateProgress progress = new UpdateProgress("Checking files...");
+            updateEngine.update(manifest, progress);
+            long updateTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            logger.info("Finished background update. Checked {} file(s), downloaded {} file(s) ({} bytes). Took {}ms.", progress.getFilesChecked(), progress.getFilesDownloaded(), progress.getBytesTransferred(), updateTime);
+        } catch (IOException exception) {
+            // nothing to show the user here, the files are checked again after login
+            logger.warn("Background update failed", exception);
+        } catch (InterruptedException exception) {
+            logger.warn("Background update was interrupted", exception);
+        } finally {
+            current = null;
+        }
+    }
+
+    /**
+     * Remove the background update's limits so it finishes as fast as it can.
+     * This is used when the user logs in and is waiting on the update.
+     *
+     * @return True if a background update is running.
+     */
+    public static boolean hurry() {
+        BackgroundUpdater updater = current;
+        if (updater == null || !updater.isAlive()) {
+            return false;
+        }
+        updater.logger.info("Removing background update limits");
+        updater.updateEngine.setPriority(TrafficShaper.Priority.PATCH);
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.tools.TrafficShaper;
+
+import java.io.InterruptedIOException;
+
+public class BandwidthLimiter {
+
+    /**
+     * The priority downloads are made with.
+     */
+    private volatile TrafficShaper.Priority priority;
+
+    /**
+     * Creates a BandwidthLimiter. Downloads share the launcher's bandwidth limits
+     * and go after anything with a higher priority.
+     *
+     * @param priority The priority downloads are made with.
+     */
+    public BandwidthLimiter(TrafficShaper.Priority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Wait until we are allowed to read more bytes.
+     *
+     * @param bytes How many bytes were just read.
+     */
+    public void acquire(int bytes) throws InterruptedIOException {
+        TrafficShaper.getInstance().acquire(priority, bytes);
+    }
+
+    /**
+     * Change the priority. Reads from now on use the new priority.
+     *
+     * @param priority The priority downloads are made with.
+     */
+    public void setPriority(TrafficShaper.Priority priority) {
+        this.priority = priority;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+
+public class DeltaPatcher {
+
+    /**
+     * The header every bsdiff patch starts with.
+     */
+    private static final byte[] MAGIC = "BSDIFF40".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The size of the patch header.
+     */
+    private static final int HEADER_SIZE = 32;
+    /**
+     * How much data we work on at once.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Extract a compressed bzip2 patch.
+     *
+     * @param compressed The compressed patch.
+     * @param output     Where to extract the patch to.
+     * @return The SHA1 of the extracted patch.
+     */
+    public static String decompress(File compressed, File output) throws IOException {
+        MessageDigest sha1 = newSHA1();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int len;
+        try (InputStream in = new BZip2CompressorInputStream(new BufferedInputStream(new FileInputStream(compressed))); OutputStream out = new FileOutputStream(output)) {
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+                sha1.update(buffer, 0, len);
+            }
+        }
+        return new HexBinaryAdapter().marshal(sha1.digest()).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Apply a bsdiff (BSDIFF40) patch to a file. Only small buffers are held in memory,
+     * the old file is read with random access and the new file is written as it's built.
+     *
+     * @param oldFile The file to patch.
+     * @param patch   The extracted patch.
+     * @param output  Where to write the patched file.
+     * @return The SHA1 of the patched file.
+     */
+    public static String apply(File oldFile, File patch, File output) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        try (InputStream in = new FileInputStream(patch)) {
+            IOUtils.readFully(in, header);
+        } catch (EOFException exception) {
+            throw new IOException("Patch " + patch.getName() + " is too small", exception);
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) {
+                throw new IOException("Patch " + patch.getName() + " is not a bsdiff patch");
+            }
+        }
+        long controlLength = readOffset(header, 8);
+        long diffLength = readOffset(header, 16);
+        long newSize = readOffset(header, 24);
+        if (controlLength < 0 || diffLength < 0 || newSize < 0) {
+            throw new IOException("Patch " + patch.getName() + " has an invalid header");
+        }
+
+        MessageDigest sha1 = newSHA1();
+        byte[] diffBuffer = new byte[CHUNK_SIZE];
+        byte[] oldBuffer = new byte[CHUNK_SIZE];
+        byte[] control = new byte[8];
+
+        // the control, diff and extra blocks are each their own bzip2 stream
+        try (InputStream controlIn = openBlock(patch, HEADER_SIZE);
+             InputStream diffIn = openBlock(patch, HEADER_SIZE + controlLength);
+             InputStream extraIn = openBlock(patch, HEADER_SIZE + controlLength + diffLength);
+             RandomAccessFile old = new RandomAccessFile(oldFile, "r");
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(output), CHUNK_SIZE)) {
+
+            long oldSize = old.length();
+            long newPos = 0;
+            long oldPos = 0;
+            while (newPos < newSize) {
+                // each control entry is: bytes to add from diff, bytes to copy from extra, how far to seek the old file
+                IOUtils.readFully(controlIn, control);
+                long addLength = readOffset(control, 0);
+                IOUtils.readFully(controlIn, control);
+                long copyLength = readOffset(control, 0);
+                IOUtils.readFully(controlIn, control);
+                long seek = readOffset(control, 0);
+
+                if (addLength < 0 || copyLength < 0 || newPos + addLength + copyLength > newSize) {
+                    throw new IOException("Patch " + patch.getName() + " is corrupt");
+                }
+
+                // add the diff bytes to the old file's bytes
+                long remaining = addLength;
+                while (remaining > 0) {
+                    int chunk = (int) Math.min(remaining, CHUNK_SIZE);
+                    IOUtils.readFully(diffIn, diffBuffer, 0, chunk);
+                    readOld(old, oldSize, oldPos, oldBuffer, chunk);
+                    for (int i = 0; i < chunk; i++) {
+                        diffBuffer[i] += oldBuffer[i];
+                    }
+                    out.write(diffBuffer, 0, chunk);
+                    sha1.update(diffBuffer, 0, chunk);
+                    oldPos += chunk;
+                    remaining -= chunk;
+                }
+                newPos += addLength;
+
+                // copy the extra bytes as they are
+                remaining = copyLength;
+                while (remaining > 0) {
+                    int chunk = (int) Math.min(remaining, CHUNK_SIZE);
+                    IOUtils.readFully(extraIn, diffBuffer, 0, chunk);
+                    out.write(diffBuffer, 0, chunk);
+                    sha1.update(diffBuffer, 0, chunk);
+                    remaining -= chunk;
+                }
+                newPos += copyLength;
+                oldPos += seek;
+            }
+        } catch (EOFException exception) {
+            throw new IOException("Patch " + patch.getName() + " ended early", exception);
+        }
+        return new HexBinaryAdapter().marshal(sha1.digest()).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Read part of the old file. Anything outside the file is read as zeros, like bsdiff expects.
+     *
+     * @param old     The old file.
+     * @param oldSize The old file's size.
+     * @param oldPos  Where to start reading.
+     * @param buffer  Where to read into.
+     * @param length  How many bytes to read.
+     */
+    private static void readOld(RandomAccessFile old, long oldSize, long oldPos, byte[] buffer, int length) throws IOException {
+        Arrays.fill(buffer, 0, length, (byte) 0);
+        long start = Math.max(oldPos, 0);
+        long end = Math.min(oldPos + length, oldSize);
+        if (start >= end) {
+            return;
+        }
+        old.seek(start);
+        old.readFully(buffer, (int) (start - oldPos), (int) (end - start));
+    }
+
+    /**
+     * Open one of the bzip2 blocks inside the patch.
+     *
+     * @param patch  The patch file.
+     * @param offset Where the block starts.
+     * @return The decompressed block.
+     */
+    private static InputStream openBlock(File patch, long offset) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(patch));
+        try {
+            IOUtils.skipFully(in, offset);
+            return new BZip2CompressorInputStream(in);
+        } catch (IOException exception) {
+            in.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Read a bsdiff number. These are 8 bytes, little endian, with the top bit as the sign.
+     *
+     * @param buffer Where to read from.
+     * @param offset Where the number starts.
+     * @return The number.
+     */
+    private static long readOffset(byte[] buffer, int offset) {
+        long value = buffer[offset + 7] & 0x7F;
+        for (int i = 6; i >= 0; i--) {
+            value = (value << 8) | (buffer[offset + i] & 0xFF);
+        }
+        if ((buffer[offset + 7] & 0x80) != 0) {
+            value = -value;
+        }
+        return value;
+    }
+
+    /**
+     * Get a SHA1 digest.
+     *
+     * @return The digest.
+     */
+    private static MessageDigest newSHA1() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IOException(exception);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.tools.SharedHttpClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+public class DiskSpacePlanner {
+
+    /**
+     * Roughly how much bigger a file is once it's extracted. Only used when we have no old copy to go by.
+     */
+    private static final int EXTRACTED_RATIO = 3;
+    /**
+     * Extra space to leave free on each drive, so the update never fills it completely.
+     */
+    private static final long SPARE_SPACE = 64L * 1024 * 1024;
+    /**
+     * Roughly how many bytes a HEAD request and its response take. A HEAD has no body, so this is what's counted
+     * against the bandwidth limits.
+     */
+    private static final int HEAD_BYTES = 1024;
+    /**
+     * What a download is assumed to be when the server won't say how big it is, and no other download is bigger.
+     * This is on the high side, so an unknown size never lets an update through that doesn't fit.
+     */
+    private static final long UNKNOWN_SIZE = 64L * 1024 * 1024;
+    /**
+     * The DiskSpacePlanner logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * HttpClient for requests.
+     */
+    private final HttpClient client;
+    /**
+     * TTR install path.
+     */
+    private final File installPath;
+    /**
+     * Where compressed files are saved before extracting.
+     */
+    private final File tempFolder;
+    /**
+     * Extract files while they download.
+     */
+    private final boolean streamDownloads;
+    /**
+     * Files this size or bigger are saved to the temp folder.
+     */
+    private final long resumeThreshold;
+    /**
+     * Where TTR's files are downloaded from.
+     */
+    private final MirrorSelector patchMirrors;
+    /**
+     * Limits how fast the update uses the network.
+     */
+    private final BandwidthLimiter limiter;
+
+    /**
+     * Creates a DiskSpacePlanner.
+     *
+     * @param client          The HttpClient to ask for file sizes with.
+     * @param installPath     The TTR install path.
+     * @param tempFolder      Where compressed files are saved before extracting.
+     * @param streamDownloads Extract files while they download.
+     * @param resumeThreshold Files this size or bigger are saved to the temp folder.
+     * @param patchMirrors    Where TTR's files are downloaded from.
+     * @param limiter         Limits how fast the update uses the network.
+     */
+    public DiskSpacePlanner(HttpClient client, File installPath, File tempFolder, boolean streamDownloads, long resumeThreshold, MirrorSelector patchMirrors, BandwidthLimiter limiter) {
+        this.client = client;
+        this.installPath = installPath;
+        this.tempFolder = tempFolder;
+        this.streamDownloads = streamDownloads;
+        this.resumeThreshold = resumeThreshold;
+        this.patchMirrors = patchMirrors;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Work out how much space the download needs, and how many files can be downloaded at once
+     * without running out. If there isn't enough space even one at a time, this fails before anything is touched.
+     *
+     * @param patches      The patch manifest.
+     * @param files        The files that will be downloaded.
+     * @param maxDownloads How many files we would like to download at once.
+     * @return How many files to download at once.
+     */
+    public int plan(JSONObject patches, List<String> files, int maxDownloads) throws IOException {
+        List<FileSize> sizes = getSizes(patches, files, maxDownloads);
+        FileStore installStore = Files.getFileStore(installPath.toPath());
+        FileStore tempStore = Files.getFileStore(tempFolder.toPath());
+        boolean sameDrive = installStore.equals(tempStore);
+        long installFree = installStore.getUsableSpace();
+        long tempFree = tempStore.getUsableSpace();
+
+        // try everything at once first, then one at a time, which has the lowest peak
+        int[] attempts = maxDownloads > 1 ? new int[]{maxDownloads, 1} : new int[]{1};
+        long unknown = sizes.stream().filter(size -> !size.known()).count();
+        String report = null;
+        for (int downloads : attempts) {
+            long installNeeded = getInstallNeeded(sizes, downloads);
+            long tempNeeded = getTempNeeded(sizes, downloads);
+            logger.info("Downloading {} at a time needs {} bytes on the install drive ({} free) and {} bytes on the temp drive ({} free)", downloads, installNeeded, installFree, tempNeeded, tempFree);
+            boolean fits = sameDrive ? installNeeded + tempNeeded + SPARE_SPACE <= installFree : installNeeded + SPARE_SPACE <= installFree && tempNeeded + SPARE_SPACE <= tempFree;
+            if (fits) {
+                if (downloads < maxDownloads) {
+                    logger.warn("Low on disk space, downloading {} file(s) at a time instead of {}", downloads, maxDownloads);
+                }
+                return downloads;
+            }
+            if (sameDrive) {
+                report = String.format("The update needs about %s on %s, but only %s is free.", formatBytes(installNeeded + tempNeeded + SPARE_SPACE), installStore, formatBytes(installFree));
+            } else {
+                report = String.format("The update needs about %s on %s (%s free) and %s on %s (%s free).", formatBytes(installNeeded + SPARE_SPACE), installStore, formatBytes(installFree), formatBytes(tempNeeded + SPARE_SPACE), tempStore, formatBytes(tempFree));
+            }
+        }
+        if (unknown > 0) {
+            report += String.format(" The size of %d file(s) is unknown, so it was estimated high.", unknown);
+        }
+        logger.error("Not enough disk space to update. {}", report);
+        throw new IOException("Not enough disk space to update TTR. " + report + " Nothing was changed, free up some space and try again.");
+    }
+
+    /**
+     * Ask the server how big each download is, and guess how big it is extracted.
+     *
+     * @param patches      The patch manifest.
+     * @param files        The files that will be downloaded.
+     * @param maxDownloads The most requests to send at once.
+     * @return The sizes.
+     */
+    private List<FileSize> getSizes(JSONObject patches, List<String> files, int maxDownloads) throws InterruptedIOException {
+        List<CompletableFuture<Long>> requests = new ArrayList<>();
+        String rootUrl = patchMirrors.pick().getUrl();
+        // don't send more requests at once than we would downloads
+        Semaphore permits = new Semaphore(Math.max(1, maxDownloads));
+        for (String file : files) {
+            String downloadName = patches.getJSONObject(file).getString("dl");
+            HttpRequest request = SharedHttpClient.newRequest(URI.create(rootUrl + downloadName))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+            try {
+                permits.acquire();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while checking download sizes");
+            }
+            limiter.acquire(HEAD_BYTES);
+            requests.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, exception) -> permits.release())
+                    .thenApply(response -> response.statusCode() == 200 ? response.headers().firstValueAsLong("Content-Length").orElse(-1) : -1L)
+                    .exceptionally(exception -> {
+                        logger.warn("Unable to get the size of {}", downloadName, exception);
+                        return -1L;
+                    }));
+        }
+
+        List<Long> compressedSizes = requests.stream().map(CompletableFuture::join).toList();
+        // a file we can't get the size of is assumed to be as big as the biggest one, so it's never counted as free
+        long largest = compressedSizes.stream().mapToLong(Long::longValue).max().orElse(-1);
+        long unknownSize = Math.max(largest, UNKNOWN_SIZE);
+        List<String> unknown = new ArrayList<>();
+        List<FileSize> sizes = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            long compressed = compressedSizes.get(i);
+            boolean known = compressed >= 0;
+            if (!known) {
+                unknown.add(files.get(i));
+                compressed = unknownSize;
+            }
+            File localFile = new File(installPath, files.get(i));
+            long oldSize = localFile.exists() ? localFile.length() : 0;
+            // the new version of a file is usually close to the old one, otherwise guess from the compressed size
+            long newSize = oldSize > 0 ? Math.max(oldSize, compressed) : compressed * EXTRACTED_RATIO;
+            sizes.add(new FileSize(compressed, oldSize, newSize, known));
+        }
+        if (!unknown.isEmpty()) {
+            logger.warn("Unable to get the size of {} file(s), assuming {} bytes each: {}", unknown.size(), unknownSize, unknown);
+        }
+        return sizes;
+    }
+
+    /**
+     * Get how much space the install drive needs. Each finished file takes the place of the old one,
+     * and each file being extracted needs room for the old and new copy at the same time.
+     *
+     * @param sizes     The sizes.
+     * @param downloads How many files are downloaded at once.
+     * @return The space needed in bytes.
+     */
+    private long getInstallNeeded(List<FileSize> sizes, int downloads) {
+        long growth = sizes.stream().mapToLong(size -> Math.max(0, size.extracted() - size.old())).sum();
+        long inFlight = sizes.stream().map(FileSize::extracted).sorted(Comparator.reverseOrder()).limit(downloads).mapToLong(Long::longValue).sum();
+        return growth + inFlight;
+    }
+
+    /**
+     * Get how much space the temp drive needs. Only files that are saved before extracting use it,
+     * and each is deleted once it's extracted.
+     *
+     * @param sizes     The sizes.
+     * @param downloads How many files are downloaded at once.
+     * @return The space needed in bytes.
+     */
+    private long getTempNeeded(List<FileSize> sizes, int downloads) {
+        return sizes.stream()
+                .map(FileSize::compressed)
+                .filter(compressed -> !streamDownloads || compressed >= resumeThreshold)
+                .sorted(Comparator.reverseOrder())
+                .limit(downloads)
+                .mapToLong(Long::longValue)
+                .sum();
+    }
+
+    /**
+     * Format a byte count to show to the user.
+     *
+     * @param bytes The byte count.
+     * @return The formatted size, in MB.
+     */
+    private static String formatBytes(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * The sizes of a single download.
+     *
+     * @param compressed The download's size.
+     * @param old        The size of the copy we have now, 0 if there is none.
+     * @param extracted  The guessed size once extracted.
+     * @param known      False if the server did not say how big the download is, so it was estimated.
+     */
+    private record FileSize(long compressed, long old, long extracted, boolean known) {
+    }
+}
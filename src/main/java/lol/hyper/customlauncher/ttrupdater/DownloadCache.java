@@ -0,0 +1,209 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.tools.OSDetection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+public class DownloadCache {
+
+    /**
+     * The DownloadCache logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * Where cached files are stored.
+     */
+    private final File cacheFolder;
+    /**
+     * The most the cache can hold, in bytes. 0 turns the cache off.
+     */
+    private final long maxSize;
+
+    /**
+     * Creates a DownloadCache.
+     *
+     * @param cacheFolder Where cached files are stored.
+     * @param maxSize     The most the cache can hold, in bytes. 0 turns the cache off.
+     */
+    public DownloadCache(File cacheFolder, long maxSize) {
+        this.cacheFolder = cacheFolder;
+        this.maxSize = Math.max(0, maxSize);
+        if (isEnabled() && !cacheFolder.exists() && !cacheFolder.mkdirs()) {
+            logger.warn("Unable to create download cache folder {}", cacheFolder.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Get the default cache folder. This is shared by every install for the current user.
+     *
+     * @return The folder.
+     */
+    public static File getDefaultFolder() {
+        if (OSDetection.isWindows()) {
+            String localAppData = System.getenv("LOCALAPPDATA");
+            if (localAppData != null) {
+                return new File(localAppData, "CustomLauncherRewrite" + File.separator + "cache");
+            }
+        }
+        String xdgCache = System.getenv("XDG_CACHE_HOME");
+        if (xdgCache != null && !xdgCache.isEmpty()) {
+            return new File(xdgCache, "CustomLauncherRewrite");
+        }
+        return new File(System.getProperty("user.home"), ".cache" + File.separator + "CustomLauncherRewrite");
+    }
+
+    /**
+     * Is the cache turned on?
+     *
+     * @return True if files are cached.
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Get a cached compressed file. The file is hashed first, so a damaged copy is never used.
+     *
+     * @param compHash The compressed file's hash from the manifest.
+     * @return The cached file, or null if it's not cached.
+     */
+    public File get(String compHash) {
+        if (!isEnabled() || compHash == null) {
+            return null;
+        }
+        File cached = getFile(compHash);
+        if (!cached.exists()) {
+            return null;
+        }
+        try {
+            if (!FileVerifier.calcSHA1(cached).equalsIgnoreCase(compHash)) {
+                logger.warn("Cached file {} is damaged, removing it", cached.getAbsolutePath());
+                Files.deleteIfExists(cached.toPath());
+                return null;
+            }
+        } catch (IOException | NoSuchAlgorithmException exception) {
+            logger.warn("Unable to check cached file {}", cached.getAbsolutePath(), exception);
+            return null;
+        }
+        // the modified time is what we evict by, so mark it as used
+        if (!cached.setLastModified(System.currentTimeMillis())) {
+            logger.warn("Unable to update {}", cached.getAbsolutePath());
+        }
+        logger.info("Using cached file {}", cached.getAbsolutePath());
+        return cached;
+    }
+
+    /**
+     * Move a downloaded compressed file into the cache. If the cache is on another drive, the file is copied.
+     * The file must already match its hash.
+     *
+     * @param compHash   The compressed file's hash from the manifest.
+     * @param compressed The downloaded file. This is gone after it's stored.
+     */
+    public void store(String compHash, File compressed) throws IOException {
+        if (!isEnabled() || compHash == null || compressed.length() > maxSize) {
+            Files.deleteIfExists(compressed.toPath());
+            return;
+        }
+        File cached = getFile(compHash);
+        try {
+            Files.move(compressed.toPath(), cached.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exception) {
+            // different drive, copy it over and rename it once it's all there
+            File staging = getStagingFile(compHash);
+            try (FileChannel in = FileChannel.open(compressed.toPath(), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(staging.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            } catch (IOException copyException) {
+                Files.deleteIfExists(staging.toPath());
+                throw copyException;
+            }
+            Files.move(staging.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(compressed.toPath());
+        }
+        logger.info("Cached {} as {}", compressed.getName(), cached.getAbsolutePath());
+        evict();
+    }
+
+    /**
+     * Get a file to write a download to before it's stored. This is in the cache folder,
+     * so storing it is just a rename.
+     *
+     * @param compHash The compressed file's hash from the manifest.
+     * @return The file.
+     */
+    public File getStagingFile(String compHash) throws IOException {
+        return Files.createTempFile(cacheFolder.toPath(), compHash.toLowerCase(Locale.ROOT), ".tmp").toFile();
+    }
+
+    /**
+     * Remove the least recently used files until the cache fits in its limit.
+     */
+    private synchronized void evict() {
+        File[] files = cacheFolder.listFiles((dir, name) -> name.endsWith(".bz2"));
+        if (files == null) {
+            return;
+        }
+        long total = Arrays.stream(files).mapToLong(File::length).sum();
+        if (total <= maxSize) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= maxSize) {
+                break;
+            }
+            long length = file.length();
+            try {
+                Files.deleteIfExists(file.toPath());
+                total -= length;
+                logger.info("Evicted {} from the download cache", file.getName());
+            } catch (IOException exception) {
+                logger.warn("Unable to evict {}", file.getAbsolutePath(), exception);
+            }
+        }
+    }
+
+    /**
+     * Get where a compressed file is cached.
+     *
+     * @param compHash The compressed file's hash from the manifest.
+     * @return The file.
+     */
+    private File getFile(String compHash) {
+        return new File(cacheFolder, compHash.toLowerCase(Locale.ROOT) + ".bz2");
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.tools.OSDetection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+public class FileVerifier {
+
+    /**
+     * Files this size or bigger are memory mapped when hashing.
+     */
+    private static final long MAP_THRESHOLD = 64L * 1024 * 1024;
+    /**
+     * How much of a file is mapped at once.
+     */
+    private static final long MAP_REGION_SIZE = 64L * 1024 * 1024;
+    /**
+     * Buffer size for files that are not mapped.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * The FileVerifier logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * TTR install path.
+     */
+    private final File installPath;
+    /**
+     * How many files we hash at once.
+     */
+    private final int threads;
+    /**
+     * Hashes from the last time files were checked.
+     */
+    private final HashIndex hashIndex;
+    /**
+     * Ignore the hash index and hash every file.
+     */
+    private final boolean fullVerify;
+
+    /**
+     * Creates a FileVerifier for an install.
+     *
+     * @param installPath The TTR install path.
+     * @param hashIndex   The hash index to read and update.
+     * @param fullVerify  Hash every file, even if the index says it has not changed.
+     */
+    public FileVerifier(File installPath, HashIndex hashIndex, boolean fullVerify) {
+        this(installPath, hashIndex, fullVerify, 0);
+    }
+
+    /**
+     * Creates a FileVerifier for an install, with a limit on how many files are hashed at once.
+     *
+     * @param installPath The TTR install path.
+     * @param hashIndex   The hash index to read and update.
+     * @param fullVerify  Hash every file, even if the index says it has not changed.
+     * @param maxThreads  The most files to hash at once, 0 to pick based on the disk.
+     */
+    public FileVerifier(File installPath, HashIndex hashIndex, boolean fullVerify, int maxThreads) {
+        this.installPath = installPath;
+        this.hashIndex = hashIndex;
+        this.fullVerify = fullVerify;
+        int poolSize = getPoolSize(installPath);
+        this.threads = maxThreads > 0 ? Math.min(maxThreads, poolSize) : poolSize;
+    }
+
+    /**
+     * Get the files in the manifest that are for the OS we are running.
+     *
+     * @param patches The patch manifest.
+     * @return The file names to check.
+     */
+    public static List<String> getFilesForOs(JSONObject patches) {
+        List<String> files = new ArrayList<>();
+        for (String key : patches.keySet()) {
+            JSONObject currentFile = patches.getJSONObject(key);
+            // get the list of OS's the file is for
+            List<String> only = currentFile.getJSONArray("only").toList().stream().map(object -> Objects.toString(object, null)).toList();
+            if (only.contains(OSDetection.getOsType())) {
+                files.add(key);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Get the files in the manifest that are for the OS we are running.
+     *
+     * @param entries The patch manifest's entries.
+     * @return The file names to check.
+     */
+    public static List<String> getFilesForOs(Map<String, ManifestEntry> entries) {
+        String osType = OSDetection.getOsType();
+        List<String> files = new ArrayList<>();
+        for (Map.Entry<String, ManifestEntry> entry : entries.entrySet()) {
+            if (entry.getValue().isFor(osType)) {
+                files.add(entry.getKey());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Check the given files against the manifest. Files are hashed at the same time on a worker pool.
+     *
+     * @param patches  The patch manifest.
+     * @param files    The files to check.
+     * @param finished Called with the file name each time a file is done being checked. This runs on the worker threads.
+     * @return The files that are missing or do not match, in the same order they were given.
+     */
+    public List<String> verify(JSONObject patches, List<String> files, Consumer<String> finished) throws IOException, InterruptedException {
+        logger.info("Checking {} file(s) using {} thread(s). Full verify: {}", files.size(), threads, fullVerify);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (String file : files) {
+            String onlineHash = patches.getJSONObject(file).getString("hash");
+            results.add(executor.submit(() -> {
+                boolean needsDownload = needsDownload(file, onlineHash);
+                finished.accept(file);
+                return needsDownload;
+            }));
+        }
+
+        List<String> filesToDownload = new ArrayList<>();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                if (results.get(i).get()) {
+                    filesToDownload.add(files.get(i));
+                }
+            }
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return filesToDownload;
+    }
+
+    /**
+     * Check a single file against TTR's hash.
+     *
+     * @param file       The file's name in the manifest.
+     * @param onlineHash The hash TTR expects.
+     * @return True if the file is missing or different.
+     */
+    private boolean needsDownload(String file, String onlineHash) throws IOException, NoSuchAlgorithmException {
+        File localFile = new File(installPath, file);
+        if (!localFile.exists()) {
+            logger.info("{} is missing and will be downloaded.", localFile.getAbsolutePath());
+            hashIndex.remove(localFile);
+            return true;
+        }
+
+        // if the file has not changed since we last hashed it, trust that hash
+        if (!fullVerify) {
+            String indexedHash = hashIndex.getHash(localFile);
+            if (indexedHash != null) {
+                logger.info("{} is unchanged since it was last checked, indexed hash: {}, expected hash: {}", localFile.getAbsolutePath(), indexedHash, onlineHash);
+                return !indexedHash.equalsIgnoreCase(onlineHash);
+            }
+        }
+
+        // the file exists locally, check the SHA1 and compare it to TTR's
+        String localHash;
+        try {
+            localHash = calcSHA1(localFile);
+        } catch (IOException exception) {
+            throw new IOException("Unable to calculate SHA1 hash for file " + localFile.getAbsolutePath(), exception);
+        }
+        hashIndex.putHash(localFile, localHash.toLowerCase(Locale.ROOT));
+        logger.info("{} local hash: {}, expected hash: {}", localFile.getAbsolutePath(), localHash.toLowerCase(Locale.ROOT), onlineHash);
+        return !localHash.equalsIgnoreCase(onlineHash);
+    }
+
+    /**
+     * Calculates the SHA1 of a file. Big files are memory mapped, everything else is read
+     * through a large buffer, which keeps the number of reads low for the big phase files.
+     *
+     * @param file The file to calculate.
+     * @return String representing the SHA1.
+     */
+    public static String calcSHA1(File file) throws IOException, NoSuchAlgorithmException {
+        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            // Windows keeps mapped files locked until they are garbage collected, which breaks replacing them later
+            if (size >= MAP_THRESHOLD && !OSDetection.isWindows()) {
+                for (long position = 0; position < size; position += MAP_REGION_SIZE) {
+                    MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_REGION_SIZE, size - position));
+                    sha1.update(region);
+                }
+            } else {
+                ByteBuffer buffer = size >= BUFFER_SIZE ? ByteBuffer.allocateDirect(BUFFER_SIZE) : ByteBuffer.allocate((int) Math.max(size, 1));
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    sha1.update(buffer);
+                    buffer.clear();
+                }
+            }
+            return new HexBinaryAdapter().marshal(sha1.digest());
+        }
+    }
+
+    /**
+     * Work out how many files to hash at once. SSDs handle lots of reads at once,
+     * spinning disks slow down if we jump around, so keep those to 2.
+     *
+     * @param installPath The TTR install path.
+     * @return The number of threads to use.
+     */
+    private int getPoolSize(File installPath) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (isRotational(installPath.toPath())) {
+            logger.info("{} looks like a spinning disk, limiting file checks.", installPath.getAbsolutePath());
+            return Math.min(cores, 2);
+        }
+        return Math.max(1, Math.min(cores, 8));
+    }
+
+    /**
+     * Check if a path lives on a spinning disk. This only works on Linux,
+     * everything else is treated like an SSD.
+     *
+     * @param path The path to check.
+     * @return True if the disk is rotational.
+     */
+    private boolean isRotational(Path path) {
+        if (!OSDetection.isLinux()) {
+            return false;
+        }
+        try {
+            FileStore store = Files.getFileStore(path);
+            // store names look like /dev/sda1 or /dev/nvme0n1p2
+            String device = Paths.get(store.name()).getFileName().toString();
+            Path block = Paths.get("/sys/class/block", device);
+            if (!Files.exists(block)) {
+                return false;
+            }
+            Path rotational = block.resolve("queue").resolve("rotational");
+            if (!Files.exists(rotational)) {
+                // partitions don't have a queue, their parent disk does
+                rotational = block.toRealPath().getParent().resolve("queue").resolve("rotational");
+            }
+            if (!Files.exists(rotational)) {
+                return false;
+            }
+            return Files.readString(rotational).trim().equals("1");
+        } catch (IOException | RuntimeException exception) {
+            logger.warn("Unable to detect disk type for {}", path, exception);
+            return false;
+        }
+    }
+}
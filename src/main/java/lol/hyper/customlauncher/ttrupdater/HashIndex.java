@@ -0,0 +1,156 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.tools.JSONUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class HashIndex {
+
+    /**
+     * The file the index is saved to.
+     */
+    private static final File INDEX_FILE = new File("config", "hashindex.json");
+    /**
+     * The HashIndex logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * Where this index is saved.
+     */
+    private final File indexFile;
+    /**
+     * Every file we have verified, keyed by the file's full path.
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the hash index from disk.
+     */
+    public HashIndex() {
+        this(INDEX_FILE);
+    }
+
+    /**
+     * Loads a hash index from somewhere other than the config folder.
+     *
+     * @param indexFile Where the index is saved.
+     */
+    HashIndex(File indexFile) {
+        this.indexFile = indexFile;
+        if (!indexFile.exists()) {
+            return;
+        }
+        try {
+            JSONObject indexJSON = new JSONObject(JSONUtils.readFile(indexFile));
+            for (String path : indexJSON.keySet()) {
+                JSONObject entry = indexJSON.getJSONObject(path);
+                entries.put(path, new Entry(entry.getLong("size"), entry.getLong("modified"), entry.getString("hash")));
+            }
+            logger.info("Loaded {} file(s) from the hash index", entries.size());
+        } catch (JSONException exception) {
+            // a broken index just means we hash everything again
+            logger.warn("Hash index is invalid, ignoring it", exception);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Get the last verified hash of a file. This is only returned if the file
+     * has not changed size or modified time since it was hashed.
+     *
+     * @param file The file to look up.
+     * @return The hash, or null if the file needs to be hashed again.
+     */
+    public String getHash(File file) {
+        Entry entry = entries.get(file.getAbsolutePath());
+        if (entry == null) {
+            return null;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException exception) {
+            return null;
+        }
+        if (attributes.size() != entry.size() || attributes.lastModifiedTime().toMillis() != entry.modified()) {
+            return null;
+        }
+        return entry.hash();
+    }
+
+    /**
+     * Save a file's hash along with its current size and modified time.
+     *
+     * @param file The file that was hashed.
+     * @param hash The file's hash.
+     */
+    public void putHash(File file, String hash) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            entries.put(file.getAbsolutePath(), new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), hash));
+        } catch (IOException exception) {
+            logger.warn("Unable to read attributes for {}", file.getAbsolutePath(), exception);
+            entries.remove(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Forget a file, so it's hashed again next time.
+     *
+     * @param file The file to remove.
+     */
+    public void remove(File file) {
+        entries.remove(file.getAbsolutePath());
+    }
+
+    /**
+     * Write the index to disk.
+     */
+    public void save() throws IOException {
+        JSONObject indexJSON = new JSONObject();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            JSONObject entryJSON = new JSONObject();
+            entryJSON.put("size", entry.getValue().size());
+            entryJSON.put("modified", entry.getValue().modified());
+            entryJSON.put("hash", entry.getValue().hash());
+            indexJSON.put(entry.getKey(), entryJSON);
+        }
+        JSONUtils.writeFileOrThrow(indexJSON, indexFile);
+    }
+
+    /**
+     * A single file in the index.
+     *
+     * @param size     The file's size when it was hashed.
+     * @param modified The file's modified time when it was hashed.
+     * @param hash     The file's SHA1.
+     */
+    private record Entry(long size, long modified, String hash) {
+    }
+}
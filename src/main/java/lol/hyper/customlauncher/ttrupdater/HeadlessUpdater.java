@@ -0,0 +1,204 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.ConfigHandler;
+import lol.hyper.customlauncher.tools.JSONUtils;
+import lol.hyper.customlauncher.tools.TrafficShaper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class HeadlessUpdater {
+
+    /**
+     * Everything worked, the install is up to date.
+     */
+    public static final int EXIT_OK = 0;
+    /**
+     * The update failed.
+     */
+    public static final int EXIT_FAILED = 1;
+    /**
+     * The arguments were wrong, or there is nothing to update with.
+     */
+    public static final int EXIT_USAGE = 2;
+    /**
+     * How to use the headless updater.
+     */
+    private static final String USAGE = "Usage: --update [--manifest <manifest>] [--full-verify] [--summary <file>]";
+    /**
+     * The HeadlessUpdater logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * The patch manifest to update with, or null to use the one from the last login.
+     */
+    private String manifest;
+    /**
+     * Hash every file, even if the index says it has not changed.
+     */
+    private boolean fullVerify = false;
+    /**
+     * Where to write the summary, or null to only print it.
+     */
+    private File summaryFile;
+    /**
+     * What was wrong with the arguments, or null if they were fine.
+     */
+    private String argumentError;
+
+    /**
+     * Creates a HeadlessUpdater from the command line arguments.
+     *
+     * @param args The arguments, after "--update".
+     */
+    public HeadlessUpdater(String[] args) {
+        for (int i = 0; i < args.length && argumentError == null; i++) {
+            switch (args[i]) {
+                case "--full-verify" -> fullVerify = true;
+                case "--manifest" -> {
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        manifest = args[++i];
+                    } else {
+                        argumentError = "--manifest needs a value";
+                    }
+                }
+                case "--summary" -> {
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        summaryFile = new File(args[++i]);
+                    } else {
+                        argumentError = "--summary needs a value";
+                    }
+                }
+                default -> argumentError = "Unknown argument " + args[i];
+            }
+        }
+    }
+
+    /**
+     * Check and update the install, without any windows.
+     *
+     * @return The exit code.
+     */
+    public int run() {
+        if (argumentError != null) {
+            logger.error(argumentError);
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        ConfigHandler configHandler = new ConfigHandler();
+        if (manifest == null || manifest.isEmpty()) {
+            manifest = configHandler.getLastManifest();
+        }
+        if (manifest.isEmpty()) {
+            logger.error("No patch manifest to update with. Pass one with --manifest, or log in once so it's saved.");
+            return EXIT_USAGE;
+        }
+        File installPath = configHandler.getInstallPath();
+        logger.info("Running headless update of {} using {}. Full verify: {}", installPath.getAbsolutePath(), manifest, fullVerify || configHandler.fullVerify());
+
+        UpdateProgress progress = new UpdateProgress("Checking files...");
+        UpdateEngine updateEngine = UpdateEngine.fromConfig(configHandler, TrafficShaper.Priority.PATCH, fullVerify || configHandler.fullVerify());
+
+        // log where we are every few seconds, there is no window to look at
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleAtFixedRate(() -> logProgress(progress), 5, 5, TimeUnit.SECONDS);
+
+        long startTime = System.nanoTime();
+        String error = null;
+        try {
+            updateEngine.update(manifest, progress);
+        } catch (IOException exception) {
+            logger.error("Headless update failed!", exception);
+            error = exception.getMessage();
+        } catch (InterruptedException exception) {
+            logger.error("Headless update was interrupted!", exception);
+            error = "Interrupted";
+        } finally {
+            executor.shutdownNow();
+        }
+        long endTime = System.nanoTime();
+
+        JSONObject summary = buildSummary(progress, startTime, endTime, error);
+        logger.info("Update summary: {}", summary);
+        System.out.println(summary);
+        if (summaryFile != null) {
+            try {
+                JSONUtils.writeFileOrThrow(summary, summaryFile);
+            } catch (IOException exception) {
+                logger.error("Unable to write the summary to {}", summaryFile.getAbsolutePath(), exception);
+                return EXIT_FAILED;
+            }
+        }
+        return error == null ? EXIT_OK : EXIT_FAILED;
+    }
+
+    /**
+     * Log how far along the update is.
+     *
+     * @param progress The update's progress.
+     */
+    private void logProgress(UpdateProgress progress) {
+        if (progress.isDownloading()) {
+            logger.info("Downloaded {} / {} file(s), {} bytes", progress.getFilesDownloaded(), progress.getFilesToDownload(), progress.getBytesDone());
+        } else {
+            logger.info("Checked {} / {} file(s)", progress.getFilesChecked(), progress.getFilesToCheck());
+        }
+    }
+
+    /**
+     * Build the summary of the update.
+     *
+     * @param progress  The update's progress.
+     * @param startTime When the update started, in nanoseconds.
+     * @param endTime   When the update ended, in nanoseconds.
+     * @param error     Why the update failed, or null if it worked.
+     * @return The summary.
+     */
+    private JSONObject buildSummary(UpdateProgress progress, long startTime, long endTime, String error) {
+        // each phase runs until the next one starts
+        long checkStarted = progress.hasStartedChecking() ? progress.getCheckStarted() : endTime;
+        long downloadStarted = progress.isDownloading() ? progress.getDownloadStarted() : endTime;
+
+        JSONObject phases = new JSONObject();
+        phases.put("manifestMs", TimeUnit.NANOSECONDS.toMillis(checkStarted - startTime));
+        phases.put("verifyMs", TimeUnit.NANOSECONDS.toMillis(Math.max(0, downloadStarted - checkStarted)));
+        phases.put("downloadMs", TimeUnit.NANOSECONDS.toMillis(Math.max(0, endTime - downloadStarted)));
+        phases.put("totalMs", TimeUnit.NANOSECONDS.toMillis(endTime - startTime));
+
+        JSONObject summary = new JSONObject();
+        summary.put("success", error == null);
+        if (error != null) {
+            summary.put("error", error);
+        }
+        summary.put("manifest", manifest);
+        summary.put("filesChecked", progress.getFilesChecked());
+        summary.put("filesDownloaded", progress.getFilesDownloaded());
+        summary.put("filesToDownload", progress.getFilesToDownload());
+        summary.put("bytesDownloaded", progress.getBytesTransferred());
+        summary.put("phases", phases);
+        return summary;
+    }
+}
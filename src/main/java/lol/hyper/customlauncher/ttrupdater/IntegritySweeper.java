@@ -0,0 +1,291 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.ConfigHandler;
+import lol.hyper.customlauncher.tools.JSONUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class IntegritySweeper {
+
+    /**
+     * The file the sweep's results are saved to.
+     */
+    private static final File RESULTS_FILE = new File("config", "integrity.json");
+    /**
+     * How many copies of the game are running. The sweep waits while any are.
+     */
+    private static final AtomicInteger gamesRunning = new AtomicInteger();
+    /**
+     * The IntegritySweeper logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * TTR install path.
+     */
+    private final File installPath;
+    /**
+     * The most files to check each minute.
+     */
+    private final int filesPerMinute;
+    /**
+     * How many bytes can be read each minute.
+     */
+    private final long bytesPerMinute;
+    /**
+     * Runs the sweep.
+     */
+    private final ScheduledExecutorService executor;
+    /**
+     * Bytes we can read before waiting for the next minute. This goes negative after a big file,
+     * which makes the next few minutes skip until it's paid back.
+     */
+    private long budget;
+    /**
+     * The results of the sweep so far.
+     */
+    private JSONObject results;
+    /**
+     * The manifest the install was fully updated to, or null if it was not.
+     */
+    private Map<String, ManifestEntry> patches;
+    /**
+     * When the manifest cache was saved, as of the last time it was loaded.
+     */
+    private long cacheModified = -1;
+    /**
+     * The cached manifest's ETag, as of the last time its entries were read.
+     */
+    private String cacheETag;
+
+    /**
+     * Creates an IntegritySweeper. This rehashes a few game files each minute while the launcher is open,
+     * to find files that were damaged after they were installed.
+     *
+     * @param configHandler The config to read settings from.
+     */
+    public IntegritySweeper(ConfigHandler configHandler) {
+        this.installPath = configHandler.getInstallPath();
+        this.filesPerMinute = Math.max(1, configHandler.getIntegrityFilesPerMinute());
+        this.bytesPerMinute = Math.max(1, configHandler.getIntegrityBytesPerMinute());
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "IntegritySweeper");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start sweeping. The first files are checked a minute after this is called, so it stays out of the way of startup.
+     */
+    public void start() {
+        loadResults();
+        loadManifest();
+        JSONObject files = results.getJSONObject("files");
+        long pending = files.keySet().stream().filter(file -> !files.getJSONObject(file).optBoolean("ok", true)).count();
+        if (pending > 0) {
+            logger.warn("{} file(s) were found damaged and will be repaired on the next launch", pending);
+        }
+        logger.info("Starting integrity sweep, {} file(s) or {} MB per minute", filesPerMinute, bytesPerMinute / (1024 * 1024));
+        executor.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Record that a copy of the game started. The sweep waits until it closes.
+     */
+    public static void gameStarted() {
+        gamesRunning.incrementAndGet();
+    }
+
+    /**
+     * Record that a copy of the game closed.
+     */
+    public static void gameStopped() {
+        gamesRunning.decrementAndGet();
+    }
+
+    /**
+     * Check the next few files in the install. This runs once a minute on the sweep thread.
+     */
+    private void sweep() {
+        budget = Math.min(budget + bytesPerMinute, bytesPerMinute);
+        if (budget <= 0 || gamesRunning.get() > 0 || UpdateEngine.isUpdating()) {
+            return;
+        }
+        loadManifest();
+        if (patches == null) {
+            return;
+        }
+
+        try {
+            List<String> files = new ArrayList<>(FileVerifier.getFilesForOs(patches));
+            if (files.isEmpty()) {
+                return;
+            }
+            Collections.sort(files);
+            // pick up where the last sweep left off, going back to the start after the last file
+            int start = Collections.binarySearch(files, results.optString("next", ""));
+            int index = start < 0 ? -start - 1 : start;
+
+            List<String> damaged = new ArrayList<>();
+            int checked = 0;
+            while (checked < filesPerMinute && checked < files.size() && budget > 0) {
+                String file = files.get(index % files.size());
+                index++;
+                checked++;
+                if (!checkFile(file, patches.get(file).hash())) {
+                    damaged.add(file);
+                }
+            }
+            results.put("next", files.get(index % files.size()));
+            // if an update is running, come back to these next time, since it might trust their old hashes
+            if (!damaged.isEmpty() && !forget(damaged)) {
+                logger.info("An update is running, damaged files will be checked again on the next sweep");
+                results.put("next", damaged.get(0));
+            }
+            JSONUtils.writeFile(results, RESULTS_FILE);
+        } catch (RuntimeException exception) {
+            // keep the schedule going, one bad sweep should not stop the rest
+            logger.error("Integrity sweep failed", exception);
+        }
+    }
+
+    /**
+     * Hash a single file and record the result.
+     *
+     * @param file         The file's name in the manifest.
+     * @param expectedHash The hash TTR says the file should have.
+     * @return False if the file is missing or damaged.
+     */
+    private boolean checkFile(String file, String expectedHash) {
+        File localFile = new File(installPath, file);
+        JSONObject result = new JSONObject();
+        result.put("checked", System.currentTimeMillis());
+        boolean ok;
+        if (!localFile.exists()) {
+            ok = false;
+            result.put("reason", "missing");
+        } else {
+            budget -= localFile.length();
+            long modified = localFile.lastModified();
+            String hash;
+            try {
+                hash = FileVerifier.calcSHA1(localFile);
+            } catch (IOException | NoSuchAlgorithmException exception) {
+                logger.warn("Unable to hash {} for the integrity sweep", localFile.getAbsolutePath(), exception);
+                return true;
+            }
+            // an update replaced the file while we were hashing it, it will be checked again next time around
+            if (localFile.lastModified() != modified) {
+                return true;
+            }
+            ok = hash.equalsIgnoreCase(expectedHash);
+            result.put("hash", hash.toLowerCase(Locale.ROOT));
+            if (!ok) {
+                result.put("reason", "hash");
+            }
+        }
+        result.put("ok", ok);
+        results.getJSONObject("files").put(file, result);
+        if (!ok) {
+            logger.warn("{} is damaged or missing, it will be repaired on the next launch", localFile.getAbsolutePath());
+        }
+        return ok;
+    }
+
+    /**
+     * Remove damaged files from the hash index, so the next update hashes them and downloads them again.
+     *
+     * @param damaged The damaged files' names in the manifest.
+     * @return False if an update is running, so nothing was changed.
+     */
+    private boolean forget(List<String> damaged) {
+        return UpdateEngine.runIfIdle(() -> {
+            HashIndex hashIndex = new HashIndex();
+            for (String file : damaged) {
+                hashIndex.remove(new File(installPath, file));
+            }
+            try {
+                hashIndex.save();
+            } catch (IOException exception) {
+                logger.error("Unable to save the hash index, damaged files might not be repaired", exception);
+            }
+        });
+    }
+
+    /**
+     * Load the manifest to sweep against. This does nothing unless the manifest cache was saved since
+     * the last time, and the entries are only read again if the manifest's ETag changed.
+     */
+    private void loadManifest() {
+        long modified = ManifestCache.getLastModified();
+        if (modified == cacheModified) {
+            return;
+        }
+        cacheModified = modified;
+        ManifestCache manifestCache = new ManifestCache(null);
+        // only sweep against a manifest the install was fully updated to, otherwise old files look damaged
+        if (!manifestCache.isUpToDate()) {
+            patches = null;
+            return;
+        }
+        String etag = manifestCache.getETag();
+        if (patches != null && etag != null && etag.equals(cacheETag)) {
+            return;
+        }
+        patches = manifestCache.getCachedEntries();
+        cacheETag = etag;
+    }
+
+    /**
+     * Load the last sweep's results from disk.
+     */
+    private void loadResults() {
+        results = null;
+        if (RESULTS_FILE.exists()) {
+            try {
+                results = new JSONObject(JSONUtils.readFile(RESULTS_FILE));
+            } catch (JSONException exception) {
+                logger.warn("Integrity sweep results are invalid, starting over", exception);
+            }
+        }
+        if (results == null) {
+            results = new JSONObject();
+        }
+        if (!results.has("files")) {
+            results.put("files", new JSONObject());
+        }
+    }
+}
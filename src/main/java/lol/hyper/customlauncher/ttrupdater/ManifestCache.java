@@ -0,0 +1,234 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.tools.ContentEncoding;
+import lol.hyper.customlauncher.tools.JSONReader;
+import lol.hyper.customlauncher.tools.JSONUtils;
+import lol.hyper.customlauncher.tools.SharedHttpClient;
+import lol.hyper.customlauncher.tools.TrafficShaper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+public class ManifestCache {
+
+    /**
+     * The file the cached manifest is saved to.
+     */
+    private static final File CACHE_FILE = new File("config", "manifest-cache.json");
+    /**
+     * The ManifestCache logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * HttpClient for requests.
+     */
+    private final HttpClient client;
+    /**
+     * The cached manifest and its headers.
+     */
+    private JSONObject cache;
+
+    /**
+     * Loads the cached manifest from disk.
+     *
+     * @param client The HttpClient to request the manifest with, or null if only the cached copy is needed.
+     */
+    public ManifestCache(HttpClient client) {
+        this.client = client;
+        if (CACHE_FILE.exists()) {
+            try {
+                cache = new JSONObject(JSONUtils.readFile(CACHE_FILE));
+            } catch (JSONException exception) {
+                logger.warn("Manifest cache is invalid, ignoring it", exception);
+            }
+        }
+        if (cache == null) {
+            cache = new JSONObject();
+        }
+    }
+
+    /**
+     * Get the patch manifest. Each mirror is tried in turn, best first, until one of them answers.
+     *
+     * @param mirrors  The mirrors that have the manifest.
+     * @param manifest The manifest's path on the mirrors.
+     * @return The manifest, and if it changed since last time.
+     */
+    public Result fetch(MirrorSelector mirrors, String manifest) throws IOException, InterruptedException {
+        IOException lastError = null;
+        for (MirrorSelector.Mirror mirror : mirrors.ranked()) {
+            long start = System.nanoTime();
+            try {
+                Result result = fetch(mirror.resolve(manifest), manifest);
+                mirror.answered(System.nanoTime() - start);
+                return result;
+            } catch (IOException exception) {
+                logger.warn("Unable to get the patch manifest from {}", mirror.getUrl(), exception);
+                mirror.failed(false);
+                lastError = exception;
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * Get the patch manifest from one mirror. If we have it cached, the server is asked if it changed,
+     * and the cached copy is used if it did not.
+     *
+     * @param url  The manifest's URL.
+     * @param path The manifest's path, which is the same on every mirror.
+     * @return The manifest, and if it changed since last time.
+     */
+    private Result fetch(URI url, String path) throws IOException, InterruptedException {
+        boolean cached = path.equals(cache.optString("path")) && cache.has("manifest");
+        HttpRequest.Builder request = ContentEncoding.accept(SharedHttpClient.newRequest(url))
+                .header("Accept", "application/json")
+                .GET();
+        if (cached) {
+            if (cache.has("etag")) {
+                request.header("If-None-Match", cache.getString("etag"));
+            }
+            if (cache.has("lastModified")) {
+                request.header("If-Modified-Since", cache.getString("lastModified"));
+            }
+        }
+
+        logger.info("Fetching patch manifest from {}", url);
+        // the manifest is small and everything else waits on it, so it goes first
+        TrafficShaper trafficShaper = TrafficShaper.getInstance();
+        trafficShaper.beginInteractive();
+        HttpResponse<String> response = null;
+        try {
+            response = client.send(request.build(), ContentEncoding.ofString());
+        } finally {
+            trafficShaper.endInteractive(response == null ? 0 : response.body().length());
+        }
+        if (response.statusCode() == 304 && cached) {
+            logger.info("Patch manifest has not changed, using the cached copy");
+            return new Result(new JSONObject(cache.getString("manifest")), false);
+        }
+        if (response.statusCode() != 200) {
+            logger.error("HTTP status code {} for {} in getting the patch manifest", response.statusCode(), url);
+            throw new IOException("Unable to read the patch manifest.");
+        }
+
+        JSONObject manifest;
+        try {
+            manifest = new JSONObject(response.body());
+        } catch (JSONException exception) {
+            throw new IOException("Unable to read the patch manifest.", exception);
+        }
+        cache = new JSONObject();
+        cache.put("path", path);
+        cache.put("manifest", response.body());
+        response.headers().firstValue("ETag").ifPresent(etag -> cache.put("etag", etag));
+        response.headers().firstValue("Last-Modified").ifPresent(lastModified -> cache.put("lastModified", lastModified));
+        // the install has not been checked against this manifest yet
+        cache.put("upToDate", false);
+        save();
+        return new Result(manifest, true);
+    }
+
+    /**
+     * Get the cached manifest's entries, without asking the server.
+     *
+     * @return The entries, or null if nothing is cached.
+     */
+    public Map<String, ManifestEntry> getCachedEntries() {
+        if (!cache.has("manifest")) {
+            return null;
+        }
+        try (JSONReader reader = new JSONReader(new StringReader(cache.getString("manifest")))) {
+            return ManifestEntry.readManifest(reader);
+        } catch (IOException exception) {
+            logger.warn("Cached patch manifest is invalid", exception);
+            return null;
+        }
+    }
+
+    /**
+     * Get the cached manifest's ETag.
+     *
+     * @return The ETag, or null if the server did not send one.
+     */
+    public String getETag() {
+        return cache.optString("etag", null);
+    }
+
+    /**
+     * Get when the cached manifest was last saved. This is cheap, so it can be used to see if the cache changed
+     * without reading it.
+     *
+     * @return The time, or 0 if nothing is cached.
+     */
+    public static long getLastModified() {
+        return CACHE_FILE.lastModified();
+    }
+
+    /**
+     * Was the install fully updated to the cached manifest last time?
+     *
+     * @return True if the last update with this manifest finished.
+     */
+    public boolean isUpToDate() {
+        return cache.optBoolean("upToDate", false);
+    }
+
+    /**
+     * Remember that the install was fully updated to the cached manifest.
+     */
+    public void markUpToDate() {
+        if (!cache.has("manifest") || isUpToDate()) {
+            return;
+        }
+        cache.put("upToDate", true);
+        save();
+    }
+
+    /**
+     * Write the cache to disk. If that fails, the manifest is just downloaded again next time.
+     */
+    private void save() {
+        try {
+            JSONUtils.writeFileOrThrow(cache, CACHE_FILE);
+        } catch (IOException exception) {
+            logger.warn("Unable to save the manifest cache", exception);
+        }
+    }
+
+    /**
+     * The patch manifest, and if it changed since last time.
+     *
+     * @param manifest The manifest.
+     * @param changed  True if the server sent a new manifest.
+     */
+    public record Result(JSONObject manifest, boolean changed) {
+    }
+}
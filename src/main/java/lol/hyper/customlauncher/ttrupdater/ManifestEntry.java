@@ -0,0 +1,140 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.tools.JSONReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @param dl       The compressed file's name on the mirrors.
+ * @param compHash The hash of the compressed file, or null if the manifest does not have it.
+ * @param hash     The hash of the extracted file.
+ * @param only     The OS types the file is for.
+ * @param patches  Patches from older versions of the file, keyed by the old file's hash.
+ */
+public record ManifestEntry(String dl, String compHash, String hash, List<String> only, Map<String, Patch> patches) {
+
+    /**
+     * Is this file for an OS type?
+     *
+     * @param osType The OS type, see {@link lol.hyper.customlauncher.tools.OSDetection#getOsType()}.
+     * @return True if the file is for that OS.
+     */
+    public boolean isFor(String osType) {
+        return only.contains(osType);
+    }
+
+    /**
+     * Read a patch manifest straight into entries, without building a JSONObject first.
+     *
+     * @param reader The manifest JSON.
+     * @return The entries, keyed by file name.
+     */
+    public static Map<String, ManifestEntry> readManifest(JSONReader reader) throws IOException {
+        Map<String, ManifestEntry> entries = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String file = reader.nextName();
+            entries.put(file, read(reader, file));
+        }
+        reader.endObject();
+        return entries;
+    }
+
+    /**
+     * Read a single file's entry.
+     *
+     * @param reader The reader, before the entry's object.
+     * @param file   The file's name, for errors.
+     * @return The entry.
+     */
+    private static ManifestEntry read(JSONReader reader, String file) throws IOException {
+        String dl = null;
+        String compHash = null;
+        String hash = null;
+        List<String> only = List.of();
+        Map<String, Patch> patches = Map.of();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "dl" -> dl = reader.nextString();
+                case "compHash" -> compHash = reader.nextString();
+                case "hash" -> hash = reader.nextString();
+                case "only" -> {
+                    only = new ArrayList<>(4);
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        only.add(reader.nextString());
+                    }
+                    reader.endArray();
+                }
+                case "patches" -> patches = readPatches(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (dl == null || hash == null) {
+            throw new IOException("Manifest entry for " + file + " is missing dl or hash");
+        }
+        return new ManifestEntry(dl, compHash, hash, only, patches);
+    }
+
+    /**
+     * Read the patches for a file.
+     *
+     * @param reader The reader, before the patches object.
+     * @return The patches, keyed by the old file's hash.
+     */
+    private static Map<String, Patch> readPatches(JSONReader reader) throws IOException {
+        Map<String, Patch> patches = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String oldHash = reader.nextName();
+            String filename = null;
+            String compPatchHash = null;
+            String patchHash = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "filename" -> filename = reader.nextString();
+                    case "compPatchHash" -> compPatchHash = reader.nextString();
+                    case "patchHash" -> patchHash = reader.nextString();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            patches.put(oldHash, new Patch(filename, compPatchHash, patchHash));
+        }
+        reader.endObject();
+        return patches;
+    }
+
+    /**
+     * @param filename      The compressed patch's name on the mirrors.
+     * @param compPatchHash The hash of the compressed patch, or null if the manifest does not have it.
+     * @param patchHash     The hash of the extracted patch, or null if the manifest does not have it.
+     */
+    public record Patch(String filename, String compPatchHash, String patchHash) {
+    }
+}
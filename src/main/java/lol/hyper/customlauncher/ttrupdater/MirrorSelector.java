@@ -0,0 +1,311 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.tools.SharedHttpClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class MirrorSelector {
+
+    /**
+     * How long to wait for a mirror to answer a probe.
+     */
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
+    /**
+     * How long a mirror is skipped after it fails, in nanoseconds.
+     */
+    private static final long FAILURE_COOLDOWN = TimeUnit.SECONDS.toNanos(60);
+    /**
+     * Mirrors are compared by how long they would take to send this much.
+     */
+    private static final long SCORE_BYTES = 4L * 1024 * 1024;
+    /**
+     * The MirrorSelector logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * What the mirrors serve, for logging.
+     */
+    private final String name;
+    /**
+     * The mirrors, in the order they were configured.
+     */
+    private final List<Mirror> mirrors = new ArrayList<>();
+    /**
+     * Downloads slower than this are given up on, in bytes per second. 0 turns this off.
+     */
+    private final long minSpeed;
+
+    /**
+     * Creates a MirrorSelector.
+     *
+     * @param name     What the mirrors serve, for logging.
+     * @param urls     The base URL of each mirror. The first one is used until we know better.
+     * @param minSpeed Downloads slower than this are given up on, in bytes per second. 0 turns this off.
+     */
+    public MirrorSelector(String name, List<String> urls, long minSpeed) {
+        this.name = name;
+        this.minSpeed = minSpeed;
+        for (String url : urls) {
+            mirrors.add(new Mirror(url));
+        }
+        if (mirrors.isEmpty()) {
+            throw new IllegalArgumentException("No " + name + " mirrors are set");
+        }
+    }
+
+    /**
+     * Ask every mirror for its base URL at the same time, to see which ones are up and how fast they answer.
+     * Any HTTP response counts as up, besides server errors.
+     *
+     * @param client The HttpClient to probe with.
+     */
+    public void probe(HttpClient client) {
+        if (mirrors.size() < 2) {
+            return;
+        }
+        List<CompletableFuture<Void>> probes = new ArrayList<>();
+        for (Mirror mirror : mirrors) {
+            HttpRequest request = SharedHttpClient.newRequest(URI.create(mirror.getUrl()))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .timeout(PROBE_TIMEOUT)
+                    .build();
+            long start = System.nanoTime();
+            probes.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .handle((response, exception) -> {
+                        if (exception != null || response.statusCode() >= 500) {
+                            logger.warn("{} mirror {} did not answer the probe", name, mirror.getUrl(), exception);
+                            mirror.failed(false);
+                        } else {
+                            mirror.answered(System.nanoTime() - start);
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0])).join();
+        logger.info("Picked {} mirror {}", name, pick().getUrl());
+    }
+
+    /**
+     * Get the fastest mirror that has not failed recently. If they all failed, the one that
+     * will be tried again soonest is used.
+     *
+     * @return The mirror.
+     */
+    public Mirror pick() {
+        return ranked().get(0);
+    }
+
+    /**
+     * Get every mirror, best first.
+     *
+     * @return The mirrors.
+     */
+    public List<Mirror> ranked() {
+        long now = System.nanoTime();
+        List<Mirror> ranked = new ArrayList<>(mirrors);
+        ranked.sort(Comparator.comparing((Mirror mirror) -> !mirror.isHealthy(now))
+                .thenComparingLong(mirror -> mirror.isHealthy(now) ? 0 : mirror.getRetryAt())
+                .thenComparingDouble(Mirror::getScore));
+        return ranked;
+    }
+
+    /**
+     * Get the slowest a download can be before it's given up on.
+     *
+     * @return The speed in bytes per second, 0 if there is no limit.
+     */
+    public long getMinSpeed() {
+        return minSpeed;
+    }
+
+    /**
+     * Log how each mirror has done.
+     */
+    public void logStats() {
+        for (Mirror mirror : mirrors) {
+            logger.info("{} mirror {}: {}", name, mirror.getUrl(), mirror);
+        }
+    }
+
+    /**
+     * A server that has TTR's files, and how well it has done so far.
+     */
+    public static class Mirror {
+
+        /**
+         * The mirror's base URL.
+         */
+        private final String url;
+        /**
+         * How long the mirror takes to answer, smoothed, in nanoseconds. -1 if we don't know yet.
+         */
+        private long latency = -1;
+        /**
+         * Bytes downloaded from this mirror.
+         */
+        private long bytes;
+        /**
+         * Time spent downloading those bytes, in nanoseconds.
+         */
+        private long transferTime;
+        /**
+         * Requests that worked.
+         */
+        private int successes;
+        /**
+         * Requests that failed.
+         */
+        private int failures;
+        /**
+         * Downloads that were too slow.
+         */
+        private int stalls;
+        /**
+         * When the mirror can be used again after failing, in nanoseconds.
+         */
+        private long retryAt;
+        /**
+         * Has the mirror failed at all?
+         */
+        private boolean everFailed;
+
+        /**
+         * Creates a Mirror.
+         *
+         * @param url The mirror's base URL.
+         */
+        Mirror(String url) {
+            this.url = url;
+        }
+
+        /**
+         * Get the mirror's base URL.
+         *
+         * @return The URL.
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Get the URL of a file on this mirror.
+         *
+         * @param path The file's path, relative to the base URL.
+         * @return The URL.
+         */
+        public URI resolve(String path) throws IOException {
+            try {
+                return new URI(url + path);
+            } catch (Exception exception) {
+                throw new IOException("Invalid URL " + url + path, exception);
+            }
+        }
+
+        /**
+         * Record that the mirror answered a request.
+         *
+         * @param nanos How long it took to answer.
+         */
+        public synchronized void answered(long nanos) {
+            latency = latency < 0 ? nanos : (latency * 3 + nanos) / 4;
+            successes++;
+            retryAt = 0;
+        }
+
+        /**
+         * Record data downloaded from the mirror.
+         *
+         * @param count How many bytes.
+         * @param nanos How long it took.
+         */
+        public synchronized void transferred(long count, long nanos) {
+            bytes += count;
+            transferTime += nanos;
+        }
+
+        /**
+         * Record that a request failed, so the mirror is skipped for a while.
+         *
+         * @param stalled True if the download was too slow, instead of failing outright.
+         */
+        public synchronized void failed(boolean stalled) {
+            failures++;
+            if (stalled) {
+                stalls++;
+            }
+            everFailed = true;
+            retryAt = System.nanoTime() + FAILURE_COOLDOWN;
+        }
+
+        /**
+         * Can this mirror be used right now?
+         *
+         * @param now The current time, in nanoseconds.
+         * @return True if it has not failed recently.
+         */
+        synchronized boolean isHealthy(long now) {
+            return !everFailed || now - retryAt >= 0;
+        }
+
+        /**
+         * Get when the mirror can be used again.
+         *
+         * @return The time, in nanoseconds.
+         */
+        synchronized long getRetryAt() {
+            return retryAt;
+        }
+
+        /**
+         * Guess how long the mirror would take to send a file. Lower is better.
+         * Mirrors we know nothing about score 0, so they get tried.
+         *
+         * @return The score, in nanoseconds.
+         */
+        synchronized double getScore() {
+            double score = Math.max(latency, 0);
+            // only trust the speed once a decent amount went through
+            if (bytes >= 256 * 1024 && transferTime > 0) {
+                score += SCORE_BYTES * (double) transferTime / bytes;
+            }
+            return score;
+        }
+
+        @Override
+        public synchronized String toString() {
+            double seconds = transferTime / 1_000_000_000.0;
+            String speed = seconds > 0 ? String.format("%.1f KB/s", bytes / 1024.0 / seconds) : "unknown";
+            String ping = latency < 0 ? "unknown" : TimeUnit.NANOSECONDS.toMillis(latency) + "ms";
+            return String.format("%d ok, %d failed (%d stalled), %.1f MB at %s, latency %s", successes, failures, stalls, bytes / (1024.0 * 1024.0), speed, ping);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParallelBzip2 {
+
+    /**
+     * Every bzip2 block starts with these 48 bits (BCD pi).
+     */
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    /**
+     * The end of a bzip2 stream starts with these 48 bits (BCD sqrt(pi)).
+     */
+    private static final long END_MAGIC = 0x177245385090L;
+    /**
+     * Files smaller than this are not worth splitting up.
+     */
+    private static final long PARALLEL_THRESHOLD = 4L * 1024 * 1024;
+    /**
+     * The most decoded data to hold while waiting for it to be written. A single block can decode to
+     * tens of MB, so counting blocks alone does not bound memory.
+     */
+    private static final long MAX_BUFFERED = 64L * 1024 * 1024;
+    /**
+     * How many blocks can be decoded at once.
+     */
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    /**
+     * Decodes blocks. Every extraction shares this, so extracting several files at once doesn't use more than every core.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "ParallelBzip2");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * The ParallelBzip2 logger.
+     */
+    private static final Logger logger = LogManager.getLogger(ParallelBzip2.class);
+
+    /**
+     * Extract a bzip2 file, decoding its blocks at the same time. Small files, and files that
+     * can't be split up, are extracted one block at a time like normal.
+     *
+     * @param compressed The compressed file.
+     * @param output     The file to extract to.
+     * @param maxThreads The most blocks to decode at once, 0 to use every core.
+     * @return The SHA1 of the extracted data.
+     */
+    public static String extract(File compressed, File output, int maxThreads) throws IOException {
+        int threads = maxThreads > 0 ? Math.min(maxThreads, THREADS) : THREADS;
+        if (threads > 1 && compressed.length() >= PARALLEL_THRESHOLD) {
+            try {
+                return extractParallel(compressed, output, threads);
+            } catch (BlockException exception) {
+                logger.warn("Unable to extract {} in parallel, extracting it normally", compressed.getAbsolutePath(), exception);
+            }
+        }
+        try (InputStream input = new FileInputStream(compressed)) {
+            return PatchDownloader.extractBz2(input, output);
+        }
+    }
+
+    /**
+     * Split a bzip2 file into its blocks, decode them on the worker pool, and write them out in order.
+     *
+     * @param compressed The compressed file.
+     * @param output     The file to extract to.
+     * @param threads    The most blocks to decode at once.
+     * @return The SHA1 of the extracted data.
+     */
+    static String extractParallel(File compressed, File output, int threads) throws IOException {
+        MessageDigest sha1;
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IOException(exception);
+        }
+
+        try (FileChannel channel = FileChannel.open(compressed.toPath(), StandardOpenOption.READ);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 1024 * 1024)) {
+            Layout layout = scan(compressed);
+            List<Long> starts = layout.blockStarts();
+            logger.info("Extracting {} ({} blocks) on {} threads", compressed.getName(), starts.size(), threads);
+
+            // one block decoding per thread and one ready to write, and stop queueing if decoded blocks pile up
+            Deque<Future<Block>> pending = new ArrayDeque<>();
+            AtomicLong buffered = new AtomicLong();
+            int combinedCRC = 0;
+            int next = 0;
+            try {
+                while (next < starts.size() || !pending.isEmpty()) {
+                    while (next < starts.size() && pending.size() < threads + 1 && buffered.get() < MAX_BUFFERED) {
+                        long start = starts.get(next);
+                        long end = next + 1 < starts.size() ? starts.get(next + 1) : layout.endBit();
+                        pending.add(EXECUTOR.submit(() -> {
+                            Block block = decodeBlock(channel, layout.level(), start, end);
+                            buffered.addAndGet(block.data().length);
+                            return block;
+                        }));
+                        next++;
+                    }
+                    Block block = await(pending.poll());
+                    out.write(block.data());
+                    sha1.update(block.data());
+                    buffered.addAndGet(-block.data().length);
+                    combinedCRC = ((combinedCRC << 1) | (combinedCRC >>> 31)) ^ block.crc();
+                }
+            } catch (IOException | RuntimeException exception) {
+                // don't leave the shared pool decoding blocks nobody will write
+                for (Future<Block> future : pending) {
+                    future.cancel(true);
+                }
+                throw exception;
+            }
+            // if we missed or made up a block, this won't match
+            if (combinedCRC != layout.streamCRC()) {
+                throw new BlockException("Stream CRC does not match for " + compressed.getName());
+            }
+        }
+        return new HexBinaryAdapter().marshal(sha1.digest()).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Wait for a block to be decoded.
+     *
+     * @param future The block.
+     * @return The decoded block.
+     */
+    private static Block await(Future<Block> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting");
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof IOException ioException) {
+                throw ioException instanceof BlockException ? ioException : new BlockException("Unable to decode block", ioException);
+            }
+            throw new BlockException("Unable to decode block", exception.getCause());
+        }
+    }
+
+    /**
+     * Find where each block starts. Blocks are not byte aligned, so every bit offset is checked.
+     *
+     * @param compressed The compressed file.
+     * @return Where the blocks are.
+     */
+    private static Layout scan(File compressed) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(compressed), 1024 * 1024)) {
+            byte[] header = in.readNBytes(4);
+            if (header.length < 4 || header[0] != 'B' || header[1] != 'Z' || header[2] != 'h' || header[3] < '1' || header[3] > '9') {
+                throw new BlockException(compressed.getName() + " is not a bzip2 file");
+            }
+            int level = header[3] - '0';
+
+            List<Long> starts = new ArrayList<>();
+            long window = 0;
+            long bytesRead = 4;
+            int value;
+            while ((value = in.read()) != -1) {
+                window = (window << 8) | value;
+                bytesRead++;
+                // the magic could end at any of the last 8 bits
+                for (int shift = 7; shift >= 0; shift--) {
+                    long candidate = (window >>> shift) & 0xFFFFFFFFFFFFL;
+                    long startBit = bytesRead * 8 - shift - 48;
+                    if (startBit < 32) {
+                        continue;
+                    }
+                    if (candidate == BLOCK_MAGIC) {
+                        starts.add(startBit);
+                    } else if (candidate == END_MAGIC) {
+                        if (starts.isEmpty()) {
+                            throw new BlockException(compressed.getName() + " has no blocks");
+                        }
+                        // the stream CRC is right after the end magic
+                        int streamCRC = (int) readBits(in, window, shift, 32);
+                        return new Layout(level, starts, startBit, streamCRC);
+                    }
+                }
+            }
+            throw new BlockException(compressed.getName() + " has no end of stream marker");
+        }
+    }
+
+    /**
+     * Read bits that follow the current position of the scan.
+     *
+     * @param in     The rest of the file.
+     * @param window The last bytes read.
+     * @param shift  How many bits of the window come after the marker.
+     * @param count  How many bits to read.
+     * @return The bits.
+     */
+    private static long readBits(InputStream in, long window, int shift, int count) throws IOException {
+        long bits = window & ((1L << shift) - 1);
+        int have = shift;
+        while (have < count) {
+            int value = in.read();
+            if (value == -1) {
+                throw new BlockException("Unexpected end of file");
+            }
+            bits = (bits << 8) | value;
+            have += 8;
+        }
+        return (bits >>> (have - count)) & ((1L << count) - 1);
+    }
+
+    /**
+     * Decode a single block. The block is copied into its own bzip2 stream, with the block's CRC
+     * as the stream CRC, and decoded like normal.
+     *
+     * @param channel  The compressed file.
+     * @param level    The stream's block size level.
+     * @param startBit Where the block starts.
+     * @param endBit   Where the next block (or the end of the stream) starts.
+     * @return The decoded block.
+     */
+    private static Block decodeBlock(FileChannel channel, int level, long startBit, long endBit) throws IOException {
+        long firstByte = startBit / 8;
+        int length = (int) ((endBit + 7) / 8 - firstByte);
+        ByteBuffer source = ByteBuffer.allocate(length);
+        while (source.hasRemaining()) {
+            if (channel.read(source, firstByte + source.position()) == -1) {
+                throw new BlockException("Unexpected end of file");
+            }
+        }
+        byte[] bytes = source.array();
+        int offset = (int) (startBit % 8);
+        long bitLength = endBit - startBit;
+
+        BitWriter writer = new BitWriter((int) (bitLength / 8) + 16);
+        writer.write('B', 8);
+        writer.write('Z', 8);
+        writer.write('h', 8);
+        writer.write('0' + level, 8);
+        // copy the block, shifting it so it starts on a byte
+        long copied = 0;
+        int index = 0;
+        while (bitLength - copied >= 8) {
+            int value = ((bytes[index] & 0xFF) << offset) | (offset == 0 ? 0 : (bytes[index + 1] & 0xFF) >>> (8 - offset));
+            writer.write(value & 0xFF, 8);
+            index++;
+            copied += 8;
+        }
+        int remaining = (int) (bitLength - copied);
+        if (remaining > 0) {
+            int value = ((bytes[index] & 0xFF) << 8) | (index + 1 < bytes.length ? bytes[index + 1] & 0xFF : 0);
+            writer.write((value >>> (16 - offset - remaining)) & ((1 << remaining) - 1), remaining);
+        }
+        // the block CRC is the 32 bits after the block magic
+        int blockCRC = (int) getBits(bytes, offset + 48, 32);
+        writer.write(END_MAGIC, 48);
+        writer.write(blockCRC & 0xFFFFFFFFL, 32);
+
+        try (InputStream in = new BZip2CompressorInputStream(new ByteArrayInputStream(writer.toByteArray()))) {
+            return new Block(in.readAllBytes(), blockCRC);
+        } catch (IOException exception) {
+            throw new BlockException("Unable to decode block at bit " + startBit, exception);
+        }
+    }
+
+    /**
+     * Read bits from a byte array.
+     *
+     * @param bytes    The bytes.
+     * @param startBit The first bit to read.
+     * @param count    How many bits to read, at most 57.
+     * @return The bits.
+     */
+    private static long getBits(byte[] bytes, int startBit, int count) {
+        long bits = 0;
+        for (int i = 0; i < count; i++) {
+            int bit = startBit + i;
+            bits = (bits << 1) | ((bytes[bit / 8] >>> (7 - bit % 8)) & 1);
+        }
+        return bits;
+    }
+
+    /**
+     * Where the blocks of a bzip2 stream are.
+     *
+     * @param level       The stream's block size level, 1-9.
+     * @param blockStarts The bit offset of each block.
+     * @param endBit      The bit offset of the end of stream marker.
+     * @param streamCRC   The stream's CRC.
+     */
+    private record Layout(int level, List<Long> blockStarts, long endBit, int streamCRC) {
+    }
+
+    /**
+     * A decoded block.
+     *
+     * @param data The block's data.
+     * @param crc  The block's CRC.
+     */
+    private record Block(byte[] data, int crc) {
+    }
+
+    /**
+     * Writes bits into a byte array.
+     */
+    private static class BitWriter {
+
+        /**
+         * The bytes written so far.
+         */
+        private final ByteArrayOutputStream bytes;
+        /**
+         * Bits that don't fill a byte yet.
+         */
+        private long buffer;
+        /**
+         * How many bits are in the buffer.
+         */
+        private int buffered;
+
+        /**
+         * Creates a BitWriter.
+         *
+         * @param size How many bytes we expect to write.
+         */
+        BitWriter(int size) {
+            bytes = new ByteArrayOutputStream(size);
+        }
+
+        /**
+         * Write some bits.
+         *
+         * @param value The bits, in the lowest bits of the value.
+         * @param count How many bits to write, at most 48.
+         */
+        void write(long value, int count) {
+            buffer = (buffer << count) | (value & ((1L << count) - 1));
+            buffered += count;
+            while (buffered >= 8) {
+                bytes.write((int) (buffer >>> (buffered - 8)) & 0xFF);
+                buffered -= 8;
+            }
+        }
+
+        /**
+         * Get everything that was written. The last byte is padded with zeros.
+         *
+         * @return The bytes.
+         */
+        byte[] toByteArray() {
+            if (buffered > 0) {
+                bytes.write((int) (buffer << (8 - buffered)) & 0xFF);
+                buffered = 0;
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Thrown when a file can't be split into blocks, so it can be extracted normally instead.
+     */
+    private static class BlockException extends IOException {
+
+        /**
+         * Creates a BlockException.
+         *
+         * @param message What went wrong.
+         */
+        BlockException(String message) {
+            super(message);
+        }
+
+        /**
+         * Creates a BlockException.
+         *
+         * @param message What went wrong.
+         * @param cause   What caused it.
+         */
+        BlockException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,925 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.tools.JSONUtils;
+import lol.hyper.customlauncher.tools.SharedHttpClient;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class PatchDownloader {
+
+    /**
+     * How long a download has to be slower than the mirror's minimum speed before it's given up on, in nanoseconds.
+     */
+    private static final long STALL_WINDOW = TimeUnit.SECONDS.toNanos(15);
+    /**
+     * Buffer size for downloading and extracting.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * The PatchDownloader logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * HttpClient for requests.
+     */
+    private final HttpClient client;
+    /**
+     * TTR install path.
+     */
+    private final File installPath;
+    /**
+     * Where compressed files are saved before extracting.
+     */
+    private final File tempFolder;
+    /**
+     * How many files to download at once.
+     */
+    private final int maxDownloads;
+    /**
+     * How many times to retry a file before giving up.
+     */
+    private final int retries;
+    /**
+     * Extract files while they download, instead of saving them to the temp folder first.
+     */
+    private final boolean streamDownloads;
+    /**
+     * Files this size or bigger are saved to the temp folder so they can be resumed.
+     */
+    private final long resumeThreshold;
+    /**
+     * The hash index, updated with every file we extract.
+     */
+    private final HashIndex hashIndex;
+    /**
+     * Keeps track of files being replaced, so a crash can be cleaned up next time.
+     */
+    private final UpdateJournal journal;
+    /**
+     * Limits how fast files are downloaded.
+     */
+    private final BandwidthLimiter limiter;
+    /**
+     * Compressed files we already downloaded, shared between installs.
+     */
+    private final DownloadCache downloadCache;
+    /**
+     * The most threads to extract a single file with, 0 to use every core.
+     */
+    private final int extractThreads;
+    /**
+     * Where TTR's files and patches are downloaded from.
+     */
+    private final MirrorSelector patchMirrors;
+    /**
+     * Downloads that are running right now, so the stall check can see them.
+     */
+    private final Set<ProgressInputStream> activeDownloads = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a PatchDownloader.
+     *
+     * @param client          The HttpClient to download with.
+     * @param installPath     The TTR install path.
+     * @param tempFolder      Where compressed files are saved before extracting.
+     * @param maxDownloads    How many files to download at once.
+     * @param retries         How many times to retry a file before giving up.
+     * @param streamDownloads Extract files while they download.
+     * @param resumeThreshold Files this size or bigger are saved to the temp folder so they can be resumed.
+     * @param hashIndex       The hash index to update with extracted files.
+     * @param journal         The journal to record file replacements in.
+     * @param limiter         Limits how fast files are downloaded.
+     * @param downloadCache   Compressed files we already downloaded.
+     * @param extractThreads  The most threads to extract a single file with, 0 to use every core.
+     * @param patchMirrors    Where TTR's files and patches are downloaded from.
+     */
+    public PatchDownloader(HttpClient client, File installPath, File tempFolder, int maxDownloads, int retries, boolean streamDownloads, long resumeThreshold, HashIndex hashIndex, UpdateJournal journal, BandwidthLimiter limiter, DownloadCache downloadCache, int extractThreads, MirrorSelector patchMirrors) {
+        this.client = client;
+        this.installPath = installPath;
+        this.tempFolder = tempFolder;
+        this.maxDownloads = Math.max(1, maxDownloads);
+        this.retries = Math.max(0, retries);
+        this.streamDownloads = streamDownloads;
+        this.resumeThreshold = resumeThreshold;
+        this.hashIndex = hashIndex;
+        this.journal = journal;
+        this.limiter = limiter;
+        this.downloadCache = downloadCache;
+        this.extractThreads = extractThreads;
+        this.patchMirrors = patchMirrors;
+    }
+
+    /**
+     * Download and extract the given files. Up to maxDownloads files are worked on at once.
+     *
+     * @param patches  The patch manifest.
+     * @param files    The files to download.
+     * @param listener Gets told about each file's progress. This runs on the worker threads.
+     */
+    public void downloadAll(JSONObject patches, List<String> files, Listener listener) throws IOException, InterruptedException {
+        logger.info("Downloading {} file(s), {} at a time. Streaming: {}", files.size(), maxDownloads, streamDownloads);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxDownloads, Math.max(1, files.size())));
+        // give up on downloads that slow to a crawl, so they can be retried on another mirror
+        ScheduledExecutorService stallCheck = Executors.newSingleThreadScheduledExecutor();
+        if (patchMirrors.getMinSpeed() > 0) {
+            stallCheck.scheduleAtFixedRate(() -> activeDownloads.forEach(ProgressInputStream::checkStall), 1, 1, TimeUnit.SECONDS);
+        }
+        List<Future<?>> results = new ArrayList<>();
+        for (String file : files) {
+            JSONObject entry = patches.getJSONObject(file);
+            results.add(executor.submit(() -> {
+                downloadWithRetries(file, entry, listener);
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+            stallCheck.shutdownNow();
+        }
+    }
+
+    /**
+     * Download and extract a single file, trying again if it fails.
+     *
+     * @param file     The file's name in the manifest.
+     * @param entry    The file's entry in the manifest.
+     * @param listener The progress listener.
+     */
+    private void downloadWithRetries(String file, JSONObject entry, Listener listener) throws IOException, InterruptedException {
+        String downloadName = entry.getString("dl");
+        IOException lastError = null;
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            if (attempt > 0) {
+                logger.warn("Retrying {} ({}/{})", downloadName, attempt, retries);
+                listener.onStatus(file, "Retrying " + downloadName);
+                // back off a little more each time
+                TimeUnit.SECONDS.sleep(attempt);
+            }
+            try {
+                downloadFile(file, entry, listener);
+                listener.onFinished(file);
+                return;
+            } catch (IOException exception) {
+                logger.error("Unable to download file {}", downloadName, exception);
+                lastError = exception;
+            }
+        }
+        throw new IOException("Unable to download file " + downloadName + ".", lastError);
+    }
+
+    /**
+     * Download a file and extract it into the install.
+     *
+     * @param file     The file's name in the manifest.
+     * @param entry    The file's entry in the manifest.
+     * @param listener The progress listener.
+     */
+    private void downloadFile(String file, JSONObject entry, Listener listener) throws IOException, InterruptedException {
+        String downloadName = entry.getString("dl");
+        String expectedHash = entry.getString("hash");
+        // mirrors that failed recently are skipped, so retries move on to the next one
+        MirrorSelector.Mirror mirror = patchMirrors.pick();
+        URI downloadURL = mirror.resolve(downloadName);
+        File output = new File(installPath, file);
+        String compHash = entry.optString("compHash", null);
+
+        // if this file was downloaded before, for this install or another one, extract that copy
+        File cached = downloadCache.get(compHash);
+        if (cached != null) {
+            logger.info("Extracting cached {} to {}", cached.getAbsolutePath(), output.getAbsolutePath());
+            listener.onStatus(file, "Extracting " + file);
+            decompressBz2(cached, output, expectedHash);
+            return;
+        }
+
+        // if TTR has a patch from the version we have, use that instead of the full file
+        JSONObject patch = findPatch(entry, output);
+        if (patch != null) {
+            try {
+                applyPatch(file, output, patch, expectedHash, mirror, listener);
+                return;
+            } catch (IOException exception) {
+                logger.warn("Unable to patch {}, downloading the full file instead", output.getAbsolutePath(), exception);
+            }
+        }
+
+        File downloadOutput = new File(tempFolder, downloadName);
+        File partial = new File(tempFolder, downloadName + ".part");
+
+        // if part of this file was downloaded before, always pick up where it left off
+        HttpResponse<InputStream> response = null;
+        if (streamDownloads && !partial.exists()) {
+            response = openDownload(mirror, downloadURL);
+            long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            // small files are extracted straight from the response, nothing is saved to the temp folder
+            // big files are saved to the temp folder so they can be resumed if the download breaks
+            if (contentLength >= 0 && contentLength < resumeThreshold) {
+                logger.info("Downloading and extracting {} to {}", downloadURL, output.getAbsolutePath());
+                listener.onStatus(file, "Downloading " + downloadName);
+                long startTime = System.nanoTime();
+                File cacheCopy = downloadCache.isEnabled() && compHash != null ? downloadCache.getStagingFile(compHash) : null;
+                try (InputStream input = new ProgressInputStream(response.body(), 0, contentLength, file, listener, mirror)) {
+                    if (cacheCopy == null) {
+                        decompressBz2(input, output, expectedHash);
+                    } else {
+                        // keep a copy of the compressed data for the cache as it goes by
+                        try (OutputStream copy = new FileOutputStream(cacheCopy)) {
+                            decompressBz2(new TeeInputStream(input, copy), output, expectedHash);
+                        }
+                    }
+                } catch (IOException exception) {
+                    if (cacheCopy != null) {
+                        Files.deleteIfExists(cacheCopy.toPath());
+                    }
+                    throw exception;
+                }
+                if (cacheCopy != null) {
+                    cacheStreamedCopy(compHash, cacheCopy);
+                }
+                long streamTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+                logger.info("Finished downloading and extracting file {}. Took {}ms.", downloadName, streamTime);
+                return;
+            }
+        }
+
+        // set the output to be in the temp folder
+        logger.info("Downloading {}", downloadURL);
+        listener.onStatus(file, "Downloading " + downloadName);
+        long downloadStart = System.nanoTime();
+        saveFile(mirror, downloadURL, downloadOutput, compHash, response, file, listener);
+        long downloadTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - downloadStart, TimeUnit.NANOSECONDS);
+        logger.info("Finished downloading {}. Took {}ms.", downloadOutput.getAbsolutePath(), downloadTime);
+
+        long startTime = System.nanoTime();
+        logger.info("Extracting {} to {}", downloadOutput.getAbsolutePath(), output.getAbsolutePath());
+        listener.onStatus(file, "Extracting " + file);
+        decompressBz2(downloadOutput, output, expectedHash);
+        // the compressed file is not needed once it's extracted, keep it in the cache for next time
+        downloadCache.store(compHash, downloadOutput);
+        long extractedTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        logger.info("Finished extracting file {}. Took {}ms.", downloadName, extractedTime);
+    }
+
+    /**
+     * Put the compressed copy of a streamed download in the cache, if all of it was copied.
+     *
+     * @param compHash  The compressed file's hash from the manifest.
+     * @param cacheCopy The copy of the compressed data.
+     */
+    private void cacheStreamedCopy(String compHash, File cacheCopy) throws IOException {
+        String copyHash;
+        try {
+            copyHash = FileVerifier.calcSHA1(cacheCopy);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IOException(exception);
+        }
+        // the extractor can stop before the end of the data, so the copy might be short
+        if (copyHash.equalsIgnoreCase(compHash)) {
+            downloadCache.store(compHash, cacheCopy);
+        } else {
+            Files.deleteIfExists(cacheCopy.toPath());
+        }
+    }
+
+    /**
+     * Extract compressed bzip2 data to its output file. The data is written next to
+     * the output file and hashed as it goes, then moved over the output once the hash matches.
+     *
+     * @param compressed   The compressed data.
+     * @param output       The file to extract to.
+     * @param expectedHash The hash TTR says the file should have.
+     */
+    private void decompressBz2(InputStream compressed, File output, String expectedHash) throws IOException {
+        extract(output, expectedHash, staging -> extractBz2(compressed, staging));
+    }
+
+    /**
+     * Extract a compressed bzip2 file to its output file. Since the whole file is on disk,
+     * big files have their blocks extracted at the same time.
+     *
+     * @param compressed   The compressed file.
+     * @param output       The file to extract to.
+     * @param expectedHash The hash TTR says the file should have.
+     */
+    private void decompressBz2(File compressed, File output, String expectedHash) throws IOException {
+        extract(output, expectedHash, staging -> ParallelBzip2.extract(compressed, staging, extractThreads));
+    }
+
+    /**
+     * Extract to a staging file next to the output file, then move it over the output once the hash matches.
+     *
+     * @param output       The file to extract to.
+     * @param expectedHash The hash TTR says the file should have.
+     * @param extractor    Writes the staging file and returns its hash.
+     */
+    private void extract(File output, String expectedHash, Extractor extractor) throws IOException {
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create folder " + parent.getAbsolutePath());
+        }
+        File staging = new File(parent, output.getName() + ".download");
+        journal.begin(output, staging, expectedHash);
+        String hash;
+        try {
+            hash = extractor.extract(staging);
+        } catch (IOException exception) {
+            Files.deleteIfExists(staging.toPath());
+            journal.finish(output);
+            throw exception;
+        }
+        install(staging, output, hash, expectedHash);
+    }
+
+    /**
+     * Extract compressed bzip2 data into a file, hashing it as it's written.
+     *
+     * @param compressed The compressed data.
+     * @param output     The file to write to.
+     * @return The SHA1 of the extracted data.
+     */
+    public static String extractBz2(InputStream compressed, File output) throws IOException {
+        MessageDigest sha1;
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IOException(exception);
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int len;
+
+        try (BZip2CompressorInputStream in = new BZip2CompressorInputStream(new BufferedInputStream(compressed, BUFFER_SIZE)); FileOutputStream out = new FileOutputStream(output)) {
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+                sha1.update(buffer, 0, len);
+            }
+        }
+        return new HexBinaryAdapter().marshal(sha1.digest()).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Move a finished file into the install, if its hash is what TTR expects. The file is
+     * flushed to disk and then renamed over the old one, so the old copy stays intact until the new one is complete.
+     *
+     * @param staging      The finished file.
+     * @param output       The file in the install to replace.
+     * @param hash         The finished file's hash.
+     * @param expectedHash The hash TTR says the file should have.
+     */
+    private void install(File staging, File output, String hash, String expectedHash) throws IOException {
+        try {
+            if (!hash.equalsIgnoreCase(expectedHash)) {
+                throw new IOException("Extracted " + output.getName() + " has hash " + hash + " but expected " + expectedHash);
+            }
+            UpdateJournal.replace(staging, output);
+            // we just hashed it, no need to do it again next launch
+            hashIndex.putHash(output, hash);
+        } catch (IOException exception) {
+            Files.deleteIfExists(staging.toPath());
+            throw exception;
+        } finally {
+            journal.finish(output);
+        }
+    }
+
+    /**
+     * Find a patch in the manifest that goes from our copy of a file to the new one.
+     *
+     * @param entry  The file's entry in the manifest.
+     * @param output The file in the install.
+     * @return The patch's entry, or null if there is no patch for our copy.
+     */
+    private JSONObject findPatch(JSONObject entry, File output) {
+        JSONObject patches = entry.optJSONObject("patches");
+        if (patches == null || patches.isEmpty() || !output.exists()) {
+            return null;
+        }
+        // the file was just checked, so the index has its current hash
+        String localHash = hashIndex.getHash(output);
+        if (localHash == null) {
+            return null;
+        }
+        for (String fromHash : patches.keySet()) {
+            if (fromHash.equalsIgnoreCase(localHash)) {
+                return patches.optJSONObject(fromHash);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Download a patch and apply it to our copy of a file.
+     *
+     * @param file         The file's name in the manifest.
+     * @param output       The file in the install.
+     * @param patch        The patch's entry in the manifest.
+     * @param expectedHash The hash TTR says the patched file should have.
+     * @param mirror       The mirror to download from.
+     * @param listener     The progress listener.
+     */
+    private void applyPatch(String file, File output, JSONObject patch, String expectedHash, MirrorSelector.Mirror mirror, Listener listener) throws IOException, InterruptedException {
+        String patchName = patch.getString("filename");
+        URI patchURL = mirror.resolve(patchName);
+
+        File compressedPatch = new File(tempFolder, patchName);
+        File extractedPatch = new File(tempFolder, patchName + ".diff");
+        File staging = new File(output.getAbsoluteFile().getParentFile(), output.getName() + ".download");
+        try {
+            logger.info("Downloading patch {} for {}", patchURL, output.getAbsolutePath());
+            listener.onStatus(file, "Downloading patch " + patchName);
+            long startTime = System.nanoTime();
+            saveFile(mirror, patchURL, compressedPatch, patch.optString("compPatchHash", null), null, file, listener);
+
+            listener.onStatus(file, "Patching " + file);
+            String patchHash = DeltaPatcher.decompress(compressedPatch, extractedPatch);
+            String expectedPatchHash = patch.optString("patchHash", null);
+            if (expectedPatchHash != null && !patchHash.equalsIgnoreCase(expectedPatchHash)) {
+                throw new IOException("Patch " + patchName + " has hash " + patchHash + " but expected " + expectedPatchHash);
+            }
+            journal.begin(output, staging, expectedHash);
+            String hash;
+            try {
+                hash = DeltaPatcher.apply(output, extractedPatch, staging);
+            } catch (IOException exception) {
+                journal.finish(output);
+                throw exception;
+            }
+            install(staging, output, hash, expectedHash);
+            long patchTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            logger.info("Finished patching file {}. Took {}ms.", output.getAbsolutePath(), patchTime);
+        } finally {
+            Files.deleteIfExists(compressedPatch.toPath());
+            Files.deleteIfExists(extractedPatch.toPath());
+            Files.deleteIfExists(staging.toPath());
+        }
+    }
+
+    /**
+     * Send the request for a file and make sure the server has it.
+     *
+     * @param mirror      The mirror the URL is on.
+     * @param downloadURL The URL to download.
+     * @return The response, with the body not read yet.
+     */
+    private HttpResponse<InputStream> openDownload(MirrorSelector.Mirror mirror, URI downloadURL) throws IOException, InterruptedException {
+        HttpRequest request = SharedHttpClient.newRequest(downloadURL)
+                .GET()
+                .build();
+
+        HttpResponse<InputStream> response = send(mirror, request);
+        if (response.statusCode() != 200) {
+            response.body().close();
+            mirror.failed(false);
+            throw new IOException("HTTP status code " + response.statusCode() + " for " + downloadURL);
+        }
+        return response;
+    }
+
+    /**
+     * Send a request to a mirror, keeping track of how long it takes to answer.
+     *
+     * @param mirror  The mirror.
+     * @param request The request.
+     * @return The response, with the body not read yet.
+     */
+    private HttpResponse<InputStream> send(MirrorSelector.Mirror mirror, HttpRequest request) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException exception) {
+            mirror.failed(false);
+            throw exception;
+        }
+        mirror.answered(System.nanoTime() - start);
+        return response;
+    }
+
+    /**
+     * Downloads TTR file and saves it to the temp folder. The file is written to a .part file first,
+     * with a .part.json next to it that describes the download. If a .part file from an earlier
+     * download is still there, only the rest of the file is requested.
+     *
+     * @param mirror         The mirror the URL is on.
+     * @param downloadURL    The URL to download.
+     * @param downloadOutput The file to save to.
+     * @param compHash       The hash of the compressed file from the manifest, or null if there is none.
+     * @param response       A response that was already opened for the whole file, or null to send a new request.
+     * @param file           The file's name in the manifest.
+     * @param listener       The progress listener.
+     */
+    private void saveFile(MirrorSelector.Mirror mirror, URI downloadURL, File downloadOutput, String compHash, HttpResponse<InputStream> response, String file, Listener listener) throws IOException, InterruptedException {
+        File partial = new File(downloadOutput.getPath() + ".part");
+        File partialInfo = new File(downloadOutput.getPath() + ".part.json");
+
+        long existing = 0;
+        if (response == null) {
+            JSONObject info = readPartialInfo(partialInfo);
+            boolean sameURL = info != null && downloadURL.toString().equals(info.optString("url"));
+            // the finished file is checked against compHash, so a download can be picked up on another mirror
+            boolean sameFile = info != null && Objects.equals(compHash, info.optString("compHash", null)) && (compHash != null || sameURL);
+            if (partial.exists() && sameFile) {
+                existing = partial.length();
+            } else {
+                Files.deleteIfExists(partial.toPath());
+                Files.deleteIfExists(partialInfo.toPath());
+            }
+
+            HttpRequest.Builder request = SharedHttpClient.newRequest(downloadURL)
+                    .GET();
+            if (existing > 0) {
+                logger.info("Resuming {} from byte {}", downloadURL, existing);
+                request.header("Range", "bytes=" + existing + "-");
+                // only resume if the file on the server is the same one we started with
+                String validator = info.optString("etag", info.optString("lastModified", ""));
+                if (!validator.isEmpty() && sameURL) {
+                    request.header("If-Range", validator);
+                }
+            }
+            response = send(mirror, request.build());
+        }
+
+        boolean append = false;
+        switch (response.statusCode()) {
+            case 200 -> {
+                // the server sent the whole file
+                if (existing > 0) {
+                    logger.info("Server sent all of {}, starting over", downloadURL);
+                }
+                existing = 0;
+            }
+            case 206 -> {
+                String contentRange = response.headers().firstValue("Content-Range").orElse("");
+                if (!contentRange.startsWith("bytes " + existing + "-")) {
+                    response.body().close();
+                    Files.deleteIfExists(partial.toPath());
+                    Files.deleteIfExists(partialInfo.toPath());
+                    throw new IOException("Unexpected Content-Range '" + contentRange + "' for " + downloadURL);
+                }
+                append = true;
+            }
+            default -> {
+                response.body().close();
+                // a 416 means our partial file is no good, so start over next time
+                if (response.statusCode() == 416) {
+                    Files.deleteIfExists(partial.toPath());
+                    Files.deleteIfExists(partialInfo.toPath());
+                } else {
+                    mirror.failed(false);
+                }
+                throw new IOException("HTTP status code " + response.statusCode() + " for " + downloadURL);
+            }
+        }
+
+        long contentLength = response.headers()
+                .firstValueAsLong("Content-Length")
+                .orElse(-1);
+        long totalLength = contentLength < 0 ? -1 : existing + contentLength;
+
+        // save what we need to resume this download later
+        JSONObject info = new JSONObject();
+        info.put("url", downloadURL.toString());
+        info.put("compHash", compHash);
+        info.put("length", totalLength);
+        response.headers().firstValue("ETag").ifPresent(etag -> info.put("etag", etag));
+        response.headers().firstValue("Last-Modified").ifPresent(lastModified -> info.put("lastModified", lastModified));
+        JSONUtils.writeFileOrThrow(info, partialInfo);
+
+        try (InputStream input = new ProgressInputStream(response.body(), existing, totalLength, file, listener, mirror);
+             FileOutputStream output = new FileOutputStream(partial, append)) {
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+
+            while ((n = input.read(buffer)) != -1) {
+                output.write(buffer, 0, n);
+            }
+        }
+
+        // make sure the whole file is what TTR says it is before we use it
+        if (compHash != null) {
+            String partialHash;
+            try {
+                partialHash = FileVerifier.calcSHA1(partial);
+            } catch (NoSuchAlgorithmException exception) {
+                throw new IOException(exception);
+            }
+            if (!partialHash.equalsIgnoreCase(compHash)) {
+                Files.deleteIfExists(partial.toPath());
+                Files.deleteIfExists(partialInfo.toPath());
+                throw new IOException("Downloaded " + downloadOutput.getName() + " has hash " + partialHash.toLowerCase(Locale.ROOT) + " but expected " + compHash);
+            }
+        }
+        Files.move(partial.toPath(), downloadOutput.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(partialInfo.toPath());
+    }
+
+    /**
+     * Read the saved information about a partial download.
+     *
+     * @param partialInfo The .part.json file.
+     * @return The information, or null if there is none.
+     */
+    private JSONObject readPartialInfo(File partialInfo) {
+        if (!partialInfo.exists()) {
+            return null;
+        }
+        try {
+            return new JSONObject(JSONUtils.readFile(partialInfo));
+        } catch (JSONException exception) {
+            logger.warn("Invalid partial download info {}", partialInfo.getAbsolutePath(), exception);
+            return null;
+        }
+    }
+
+    /**
+     * Reports download progress to the listener as the response body is read, and keeps it under the bandwidth limit.
+     * If the download gets too slow for too long, the stall check closes it.
+     */
+    private class ProgressInputStream extends ProxyInputStream {
+
+        /**
+         * The file's name in the manifest.
+         */
+        private final String file;
+        /**
+         * The progress listener.
+         */
+        private final Listener listener;
+        /**
+         * The mirror the body comes from.
+         */
+        private final MirrorSelector.Mirror mirror;
+        /**
+         * When the body started being read, in nanoseconds.
+         */
+        private final long opened = System.nanoTime();
+        /**
+         * Bytes read so far.
+         */
+        private long bytesRead;
+        /**
+         * Time spent waiting on the bandwidth limit, in nanoseconds. That time does not count towards the stall check.
+         */
+        private long throttled;
+        /**
+         * When the current stall check window started, in nanoseconds.
+         */
+        private long windowStart = opened;
+        /**
+         * Bytes read in the current stall check window.
+         */
+        private long windowBytes;
+        /**
+         * Time spent waiting on the bandwidth limit in the current stall check window, in nanoseconds.
+         */
+        private long windowThrottled;
+        /**
+         * Are we waiting on the bandwidth limit right now?
+         */
+        private boolean throttling;
+        /**
+         * Was the download closed for being too slow?
+         */
+        private volatile boolean stalled;
+        /**
+         * Was the failure already counted against the mirror?
+         */
+        private boolean failed;
+
+        /**
+         * Wraps a response body.
+         *
+         * @param input         The response body.
+         * @param start         How many bytes of the file we already have.
+         * @param contentLength The size of the download, or -1 if unknown.
+         * @param file          The file's name in the manifest.
+         * @param listener      The progress listener.
+         * @param mirror        The mirror the body comes from.
+         */
+        ProgressInputStream(InputStream input, long start, long contentLength, String file, Listener listener, MirrorSelector.Mirror mirror) {
+            super(input);
+            this.file = file;
+            this.listener = listener;
+            this.mirror = mirror;
+            listener.onDownloadStarted(file, contentLength, start);
+            activeDownloads.add(this);
+        }
+
+        @Override
+        protected void afterRead(int n) throws IOException {
+            if (n <= 0) {
+                // closing the body for a stall can make it look like it ended
+                if (stalled) {
+                    throw stallException(null);
+                }
+                return;
+            }
+            long start = System.nanoTime();
+            synchronized (this) {
+                throttling = true;
+            }
+            try {
+                limiter.acquire(n);
+            } finally {
+                synchronized (this) {
+                    throttling = false;
+                    long waited = System.nanoTime() - start;
+                    throttled += waited;
+                    windowThrottled += waited;
+                    bytesRead += n;
+                    windowBytes += n;
+                }
+            }
+            listener.onDownloaded(file, n);
+        }
+
+        @Override
+        protected void handleIOException(IOException exception) throws IOException {
+            // being interrupted is not the mirror's fault
+            if (!failed && !(exception instanceof InterruptedIOException)) {
+                failed = true;
+                mirror.failed(stalled);
+            }
+            if (stalled && !(exception instanceof StallException)) {
+                throw stallException(exception);
+            }
+            throw exception;
+        }
+
+        /**
+         * Make the exception for a download that was too slow.
+         *
+         * @param cause What the read failed with after it was closed, or null.
+         * @return The exception.
+         */
+        private StallException stallException(IOException cause) {
+            return new StallException("Download of " + file + " from " + mirror.getUrl() + " was slower than " + patchMirrors.getMinSpeed() / 1024 + " KB/s", cause);
+        }
+
+        /**
+         * Close the download if it was slower than the mirror's minimum speed over the last window.
+         * Time spent waiting on the bandwidth limit is left out. This runs on the stall check thread.
+         */
+        void checkStall() {
+            synchronized (this) {
+                if (throttling || stalled) {
+                    return;
+                }
+                long now = System.nanoTime();
+                long elapsed = now - windowStart - windowThrottled;
+                if (elapsed < STALL_WINDOW) {
+                    return;
+                }
+                if (windowBytes * 1_000_000_000.0 / elapsed >= patchMirrors.getMinSpeed()) {
+                    windowStart = now;
+                    windowBytes = 0;
+                    windowThrottled = 0;
+                    return;
+                }
+                stalled = true;
+            }
+            logger.warn("Download of {} from {} stalled, giving up on it", file, mirror.getUrl());
+            try {
+                // this wakes up the read that is waiting on the body
+                in.close();
+            } catch (IOException exception) {
+                logger.warn("Unable to close stalled download of {}", file, exception);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            activeDownloads.remove(this);
+            synchronized (this) {
+                mirror.transferred(bytesRead, System.nanoTime() - opened - throttled);
+                bytesRead = 0;
+            }
+            super.close();
+        }
+    }
+
+    /**
+     * Thrown when a download is closed for being too slow.
+     */
+    private static class StallException extends IOException {
+
+        /**
+         * Creates a StallException.
+         *
+         * @param message What was too slow.
+         * @param cause   What the read failed with after it was closed, or null.
+         */
+        StallException(String message, IOException cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Writes an extracted file.
+     */
+    private interface Extractor {
+
+        /**
+         * Extract to a file.
+         *
+         * @param staging The file to write to.
+         * @return The SHA1 of the extracted data.
+         */
+        String extract(File staging) throws IOException;
+    }
+
+    /**
+     * Gets told about the progress of each file being downloaded.
+     */
+    public interface Listener {
+
+        /**
+         * A file's status changed.
+         *
+         * @param file   The file's name in the manifest.
+         * @param status What is happening to the file.
+         */
+        void onStatus(String file, String status);
+
+        /**
+         * A file's download started. This is called again if the download is retried.
+         *
+         * @param file     The file's name in the manifest.
+         * @param length   The size of the whole download, or -1 if the server did not say.
+         * @param existing How many bytes we already had from an earlier download.
+         */
+        void onDownloadStarted(String file, long length, long existing);
+
+        /**
+         * More of a file was downloaded. This is called for every read, so it needs to be cheap.
+         *
+         * @param file  The file's name in the manifest.
+         * @param bytes How many bytes were just read.
+         */
+        void onDownloaded(String file, int bytes);
+
+        /**
+         * A file was downloaded and extracted.
+         *
+         * @param file The file's name in the manifest.
+         */
+        void onFinished(String file);
+    }
+}
@@ -20,30 +20,15 @@ package lol.hyper.customlauncher.ttrupdater;
 import lol.hyper.customlauncher.ConfigHandler;
 import lol.hyper.customlauncher.CustomLauncherRewrite;
 import lol.hyper.customlauncher.tools.ExceptionWindow;
-import lol.hyper.customlauncher.tools.JSONUtils;
-import lol.hyper.customlauncher.tools.OSDetection;
 import lol.hyper.customlauncher.tools.PopUpWindow;
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import lol.hyper.customlauncher.tools.TrafficShaper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.json.JSONObject;
 
 import javax.swing.*;
-import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
 import java.awt.*;
-import java.io.*;
-import java.net.URI;
-import java.net.URL;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
-import java.util.Objects;
-import java.util.concurrent.TimeUnit;
+import java.io.File;
+import java.io.IOException;
 
 public class TTRUpdater extends JFrame {
 
@@ -72,9 +57,21 @@ public class TTRUpdater extends JFrame {
      */
     private boolean status = false;
     /**
-     * HttpClient for requests.
+     * How often the window is redrawn while updating, in milliseconds.
      */
-    private final HttpClient client = HttpClient.newHttpClient();
+    private static final int REFRESH_INTERVAL = 50;
+    /**
+     * When the window was last redrawn, in nanoseconds.
+     */
+    private long lastRender;
+    /**
+     * How many bytes were downloaded when the window was last redrawn.
+     */
+    private long lastTransferred = -1;
+    /**
+     * The smoothed download speed, or -1 if we don't know it yet.
+     */
+    private double bytesPerSecond = -1;
 
     /**
      * Creates the TTR updater window.
@@ -82,7 +79,7 @@ public class TTRUpdater extends JFrame {
     public TTRUpdater() {
         // set up the window elements
         setTitle("TTR Updater");
-        setSize(370, 150);
+        setSize(420, 150);
         setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         setResizable(false);
         try {
@@ -129,139 +126,28 @@ public class TTRUpdater extends JFrame {
         }
 
         logger.info("Starting TTRUpdater");
-        // read the patches
-        String patchesManifestRootUrl = "https://cdn.toontownrewritten.com";
-        String patchManifest = patchesManifestRootUrl + manifest;
-        JSONObject patches = JSONUtils.requestJSON(patchManifest);
-        if (patches == null) {
-            logger.error("patchesmanifest.txt returned null!");
+        // if the background updater is still going, let it finish at full speed
+        boolean waiting = BackgroundUpdater.hurry();
+
+        // workers only bump counters, the window is redrawn from them on the EDT
+        UpdateProgress progress = new UpdateProgress(waiting ? "Finishing background update..." : "Checking files...");
+        Timer refresher = new Timer(REFRESH_INTERVAL, event -> render(progress));
+        refresher.start();
+        UpdateEngine updateEngine = UpdateEngine.fromConfig(configHandler, TrafficShaper.Priority.PATCH, configHandler.fullVerify());
+        try {
+            updateEngine.update(manifest, progress);
+        } catch (IOException exception) {
+            logger.error("Unable to update files!", exception);
+            new PopUpWindow(this, exception.getMessage());
             dispose();
             return;
-        }
-        progressBar.setMaximum(patches.length());
-
-        ArrayList<String> filesToDownload = new ArrayList<>();
-
-        // this loops through the JSON
-        // key is the file name
-        for (String key : patches.keySet()) {
-            progressBar.setValue(progressBar.getValue() + 1);
-            JSONObject currentFile = patches.getJSONObject(key);
-            String onlineHash = currentFile.getString("hash");
-            // get the list of OS's the file is for
-            List<String> only = currentFile.getJSONArray("only").toList().stream().map(object -> Objects.toString(object, null)).toList();
-            // if we are running the OS the file is for, check it
-            if (only.contains(OSDetection.getOsType())) {
-                File localFile = new File(installPath, key);
-                updateStatus.setText("Checking file " + localFile.getName());
-                if (!localFile.exists()) {
-                    logger.info("-----------------------------------------------------------------------");
-                    logger.info("{}{}{}", installPath.getAbsolutePath(), File.separator, key);
-                    logger.info("This file is missing and will be downloaded.");
-                    filesToDownload.add(key);
-                    continue;
-                }
-
-                // the file exists locally, check the SHA1 and compare it to TTR's
-                String localHash;
-                try {
-                    localHash = calcSHA1(localFile);
-                } catch (Exception exception) {
-                    logger.error("Unable to calculate SHA1 hash for file {}", localFile.getAbsolutePath(), exception);
-                    new ExceptionWindow(exception);
-                    dispose();
-                    return;
-                }
-                logger.info("-----------------------------------------------------------------------");
-                logger.info("{}{}{}", installPath.getAbsolutePath(), File.separator, key);
-                logger.info("Local hash: {}", localHash.toLowerCase(Locale.ENGLISH));
-                logger.info("Expected hash: {}", onlineHash);
-                logger.info("Type: {}", OSDetection.getOsType());
-                if (!localHash.equalsIgnoreCase(onlineHash)) {
-                    filesToDownload.add(key);
-                }
-            }
-        }
-
-        logger.info("-----------------------------------------------------------------------");
-
-        // we store files we need to download in filesToDownload
-        // if there are files in that list, download them
-        int currentProgress = 0;
-        if (!filesToDownload.isEmpty()) {
-            totalUpdateStatus.setText(String.format("Progress: %d / %d", currentProgress, filesToDownload.size()));
-            File tempFolder = new File("temp");
-            if (!tempFolder.exists() && !tempFolder.mkdirs()) {
-                logger.error("Unable to create temp folder!");
-                new PopUpWindow(this, "Unable to create temp folder!");
-                dispose();
-                return;
-            }
-
-            logger.info("{} file(s) are going to be downloaded.", filesToDownload.size());
-            logger.info(filesToDownload);
-
-            progressBar.setValue(0); // reset
-
-            // download each file
-            for (String fileToDownload : filesToDownload) {
-                // set the progress
-                progressBar.setMaximum(fileToDownload.length());
-                // get the file name from TTR to download
-                JSONObject file = patches.getJSONObject(fileToDownload);
-                String downloadName = file.getString("dl");
-
-                String patchesRootUrl = "https://download.toontownrewritten.com/patches/";
-                logger.info("Downloading {}{}", patchesRootUrl, downloadName);
-                updateStatus.setText("Downloading " + downloadName);
-                progressBar.setVisible(true);
-                progressBar.setValue(progressBar.getValue() + 1);
-
-                // build the download URL
-                URL downloadURL;
-                try {
-                    downloadURL = new URI(patchesRootUrl + downloadName).toURL();
-                } catch (Exception exception) {
-                    logger.error("Invalid URL {}{}", patchesRootUrl, downloadName);
-                    new ExceptionWindow(exception);
-                    dispose();
-                    return;
-                }
-
-                // set the output to be in the temp folder
-                File downloadOutput = new File(tempFolder + File.separator + downloadName);
-                long downloadStart = System.nanoTime();
-                // download the file
-                if (!saveFile(downloadURL, downloadOutput)) {
-                    logger.error("Unable to download file {}", downloadName);
-                    new PopUpWindow(this, "Unable to download file " + downloadName + ".");
-                    dispose();
-                    return;
-                }
-                long downloadTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - downloadStart, TimeUnit.NANOSECONDS);
-                logger.info("Finished downloading {}. Took {}ms.", downloadOutput.getAbsolutePath(), downloadTime);
-                updateStatus.setText("Finished downloading " + downloadName);
-
-                long startTime = System.nanoTime();
-                logger.info("Extracting {} to {}{}{}", downloadOutput.getAbsolutePath(), installPath, File.separator, fileToDownload);
-                updateStatus.setText("Extracting " + downloadOutput + " to " + fileToDownload);
-                try {
-                    // extract the file to the new location
-                    decompressBz2(downloadName, fileToDownload);
-                } catch (IOException exception) {
-                    logger.error("Unable to extract file {}", downloadName, exception);
-                    new ExceptionWindow(exception);
-                    dispose();
-                    return;
-                }
-                updateStatus.setText("Finished extracting file " + fileToDownload);
-                long extractedTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
-                logger.info("Finished extracting file {}. Took {}ms.", downloadName, extractedTime);
-                currentProgress++;
-                totalUpdateStatus.setText(String.format("Progress: %d / %d", currentProgress, filesToDownload.size()));
-            }
-        } else {
-            logger.info("No files need downloaded, we are up to date.");
+        } catch (InterruptedException exception) {
+            logger.error("Interrupted while updating files!", exception);
+            new ExceptionWindow(exception);
+            dispose();
+            return;
+        } finally {
+            refresher.stop();
         }
         logger.info("Finished checking for TTR updates!");
         status = true;
@@ -269,106 +155,59 @@ public class TTRUpdater extends JFrame {
     }
 
     /**
-     * Returns the status of the updater.
+     * Draw the update's progress. This runs on the EDT.
      *
-     * @return True if it was successful, false if it failed.
+     * @param progress The update's progress.
      */
-    public boolean status() {
-        return status;
-    }
-
-    /**
-     * Calculates the SHA1 of a file.
-     *
-     * @param file The file to calculate.
-     * @return String representing the SHA1.
-     */
-    private static String calcSHA1(File file) throws IOException, NoSuchAlgorithmException {
-        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
-        try (InputStream input = new FileInputStream(file)) {
-
-            byte[] buffer = new byte[8192];
-            int len = input.read(buffer);
+    private void render(UpdateProgress progress) {
+        long now = System.nanoTime();
+        updateStatus.setText(progress.getStatus());
+        if (!progress.isDownloading()) {
+            progressBar.setMaximum(progress.getFilesToCheck());
+            progressBar.setValue(progress.getFilesChecked());
+            lastRender = now;
+            return;
+        }
 
-            while (len != -1) {
-                sha1.update(buffer, 0, len);
-                len = input.read(buffer);
-            }
-            return new HexBinaryAdapter().marshal(sha1.digest());
+        // smooth out the download speed so it doesn't jump around every frame
+        long transferred = progress.getBytesTransferred();
+        double seconds = (now - lastRender) / 1_000_000_000.0;
+        if (lastTransferred >= 0 && seconds > 0) {
+            double rate = (transferred - lastTransferred) / seconds;
+            bytesPerSecond = bytesPerSecond < 0 ? rate : bytesPerSecond * 0.9 + rate * 0.1;
+        }
+        lastTransferred = transferred;
+        lastRender = now;
+
+        long done = progress.getBytesDone();
+        long total = Math.max(progress.getEstimatedBytes(), done);
+        progressBar.setMaximum(1000);
+        progressBar.setValue(total > 0 ? (int) (done * 1000 / total) : 0);
+
+        String text = String.format("%d / %d files, %s / %s", progress.getFilesDownloaded(), progress.getFilesToDownload(), formatBytes(done), formatBytes(total));
+        if (bytesPerSecond > 0) {
+            long eta = (long) ((total - done) / bytesPerSecond);
+            text += String.format(", %s/s, %d:%02d left", formatBytes((long) bytesPerSecond), eta / 60, eta % 60);
         }
+        totalUpdateStatus.setText(text);
     }
 
     /**
-     * Extract the compressed bzip2 files to their output file.
+     * Format a byte count to show to the user.
      *
-     * @param temp       The temp file's name that was downloaded.
-     * @param outputName The file's output name.
+     * @param bytes The byte count.
+     * @return The formatted size, in MB.
      */
-    private void decompressBz2(String temp, String outputName) throws IOException {
-        File tempFile = new File("temp" + File.separator + temp);
-        File output = new File(installPath, outputName);
-
-        long totalBytes = tempFile.length();
-        long bytesRead = 0;
-        byte[] buffer = new byte[1024];
-        int len;
-
-        try (BZip2CompressorInputStream in = new BZip2CompressorInputStream(new BufferedInputStream(new FileInputStream(tempFile))); FileOutputStream out = new FileOutputStream(output)) {
-            while ((len = in.read(buffer)) != -1) {
-                out.write(buffer, 0, len);
-                bytesRead += len;
-                int progress = (int) ((bytesRead * 100) / totalBytes);
-                progressBar.setValue(progress);
-            }
-        }
+    private static String formatBytes(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
     }
 
     /**
-     * Downloads TTR file and saves it to the temp folder.
+     * Returns the status of the updater.
      *
-     * @param downloadURL    The URL to download.
-     * @param downloadOutput The file to save to.
-     * @return True if successful, false if not.
+     * @return True if it was successful, false if it failed.
      */
-    private boolean saveFile(URL downloadURL, File downloadOutput) {
-        boolean isSucceed = true;
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(downloadURL.toString()))
-                .header("User-Agent", CustomLauncherRewrite.getUserAgent())
-                .GET()
-                .build();
-
-        try {
-            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
-
-            long contentLength = response.headers()
-                    .firstValueAsLong("Content-Length")
-                    .orElse(-1);
-
-            try (InputStream input = response.body();
-                 FileOutputStream output = new FileOutputStream(downloadOutput)) {
-
-                byte[] buffer = new byte[4096];
-                long count = 0;
-                int n;
-
-                progressBar.setMaximum(100);
-
-                while ((n = input.read(buffer)) != -1) {
-                    output.write(buffer, 0, n);
-                    count += n;
-                    if (contentLength > 0) {
-                        int percent = (int) (count * 100 / contentLength);
-                        progressBar.setValue(percent);
-                    }
-                }
-            }
-        } catch (IOException | InterruptedException e) {
-            logger.error("Unable to save file!", e);
-            isSucceed = false;
-        }
-
-        return isSucceed;
+    public boolean status() {
+        return status;
     }
 }
@@ -0,0 +1,343 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.ConfigHandler;
+import lol.hyper.customlauncher.tools.SharedHttpClient;
+import lol.hyper.customlauncher.tools.TrafficShaper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class UpdateEngine {
+
+    /**
+     * Only one update can touch the install at a time.
+     */
+    private static final ReentrantLock UPDATE_LOCK = new ReentrantLock();
+    /**
+     * The UpdateEngine logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * HttpClient for requests.
+     */
+    private final HttpClient client;
+    /**
+     * TTR install path.
+     */
+    private final File installPath;
+    /**
+     * Hash every file, even if the index says it has not changed.
+     */
+    private final boolean fullVerify;
+    /**
+     * The most files to hash at once, 0 to pick based on the disk. This also limits how many threads extract a big file.
+     */
+    private final int verifyThreads;
+    /**
+     * How many files to download at once.
+     */
+    private final int maxDownloads;
+    /**
+     * How many times to retry a file before giving up.
+     */
+    private final int retries;
+    /**
+     * Extract files while they download.
+     */
+    private final boolean streamDownloads;
+    /**
+     * Files this size or bigger are saved to the temp folder so they can be resumed.
+     */
+    private final long resumeThreshold;
+    /**
+     * Limits how fast files are downloaded.
+     */
+    private final BandwidthLimiter limiter;
+    /**
+     * Compressed files we already downloaded, shared between installs.
+     */
+    private final DownloadCache downloadCache;
+    /**
+     * Where TTR's patch manifests are downloaded from.
+     */
+    private final MirrorSelector manifestMirrors;
+    /**
+     * Where TTR's files and patches are downloaded from.
+     */
+    private final MirrorSelector patchMirrors;
+
+    /**
+     * Creates an UpdateEngine.
+     *
+     * @param client          The HttpClient to download with.
+     * @param installPath     The TTR install path.
+     * @param fullVerify      Hash every file, even if the index says it has not changed.
+     * @param verifyThreads   The most files to hash at once, 0 to pick based on the disk. This also limits how many threads extract a big file.
+     * @param maxDownloads    How many files to download at once.
+     * @param retries         How many times to retry a file before giving up.
+     * @param streamDownloads Extract files while they download.
+     * @param resumeThreshold Files this size or bigger are saved to the temp folder so they can be resumed.
+     * @param limiter         Limits how fast files are downloaded.
+     * @param downloadCache   Compressed files we already downloaded.
+     * @param manifestMirrors Where TTR's patch manifests are downloaded from.
+     * @param patchMirrors    Where TTR's files and patches are downloaded from.
+     */
+    public UpdateEngine(HttpClient client, File installPath, boolean fullVerify, int verifyThreads, int maxDownloads, int retries, boolean streamDownloads, long resumeThreshold, BandwidthLimiter limiter, DownloadCache downloadCache, MirrorSelector manifestMirrors, MirrorSelector patchMirrors) {
+        this.client = client;
+        this.installPath = installPath;
+        this.fullVerify = fullVerify;
+        this.verifyThreads = verifyThreads;
+        this.maxDownloads = maxDownloads;
+        this.retries = retries;
+        this.streamDownloads = streamDownloads;
+        this.resumeThreshold = resumeThreshold;
+        this.limiter = limiter;
+        this.downloadCache = downloadCache;
+        this.manifestMirrors = manifestMirrors;
+        this.patchMirrors = patchMirrors;
+    }
+
+    /**
+     * Creates an UpdateEngine for the install in the config, using the config's settings.
+     * Background updates download one file at a time and hash with the background thread count.
+     *
+     * @param configHandler The config to read settings from.
+     * @param priority      The priority of the update's downloads.
+     * @param fullVerify    Hash every file, even if the index says it has not changed.
+     * @return The UpdateEngine.
+     */
+    public static UpdateEngine fromConfig(ConfigHandler configHandler, TrafficShaper.Priority priority, boolean fullVerify) {
+        boolean background = priority == TrafficShaper.Priority.BACKGROUND;
+        int verifyThreads = background ? configHandler.getBackgroundThreads() : 0;
+        int maxDownloads = background ? 1 : configHandler.getMaxDownloads();
+        DownloadCache downloadCache = new DownloadCache(configHandler.getDownloadCacheFolder(), configHandler.getDownloadCacheSize());
+        MirrorSelector manifestMirrors = new MirrorSelector("manifest", configHandler.getManifestMirrors(), 0);
+        MirrorSelector patchMirrors = new MirrorSelector("patch", configHandler.getPatchMirrors(), configHandler.getStallLimit());
+        return new UpdateEngine(SharedHttpClient.get(), configHandler.getInstallPath(), fullVerify, verifyThreads, maxDownloads, configHandler.getDownloadRetries(), configHandler.streamDownloads(), configHandler.getResumeThreshold(), new BandwidthLimiter(priority), downloadCache, manifestMirrors, patchMirrors);
+    }
+
+    /**
+     * Change the priority of the update's downloads, even while it is running.
+     *
+     * @param priority The new priority.
+     */
+    public void setPriority(TrafficShaper.Priority priority) {
+        limiter.setPriority(priority);
+    }
+
+    /**
+     * Check the install against a patch manifest and download anything that is missing or different.
+     * If another update is running, this waits for it to finish first.
+     *
+     * @param manifest The patch manifest's path on TTR's CDN.
+     * @param listener Gets told about the update's progress. This runs on the worker threads.
+     */
+    public void update(String manifest, Listener listener) throws IOException, InterruptedException {
+        UPDATE_LOCK.lockInterruptibly();
+        try {
+            runUpdate(manifest, listener);
+        } finally {
+            UPDATE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Check if an update is running right now.
+     *
+     * @return True if an update is running.
+     */
+    public static boolean isUpdating() {
+        return UPDATE_LOCK.isLocked();
+    }
+
+    /**
+     * Run something that changes the hash index, but only if no update is running.
+     *
+     * @param task The task.
+     * @return True if the task ran, false if an update is running.
+     */
+    static boolean runIfIdle(Runnable task) {
+        if (!UPDATE_LOCK.tryLock()) {
+            return false;
+        }
+        try {
+            task.run();
+        } finally {
+            UPDATE_LOCK.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Does the actual update, once we hold the lock.
+     *
+     * @param manifest The patch manifest's path on TTR's CDN.
+     * @param listener The progress listener.
+     */
+    private void runUpdate(String manifest, Listener listener) throws IOException, InterruptedException {
+        // read the patches, the server tells us if they changed since last time
+        ManifestCache manifestCache = new ManifestCache(client);
+        ManifestCache.Result manifestResult = manifestCache.fetch(manifestMirrors, manifest);
+        JSONObject patches = manifestResult.manifest();
+        // only check the files that are for our OS
+        List<String> filesToCheck = FileVerifier.getFilesForOs(patches);
+        listener.onChecking(filesToCheck.size());
+
+        // hash every file on a worker pool, then collect what needs to be downloaded
+        // files that have not changed since the last check are not hashed again, unless full verify is on
+        HashIndex hashIndex = new HashIndex();
+        // if the last update was cut off, finish it or make sure those files get checked again
+        UpdateJournal journal = new UpdateJournal();
+        boolean recovered = journal.recover(hashIndex);
+
+        // nothing changed on TTR's end, and nothing changed on ours, so there is nothing to check
+        boolean sameManifest = !manifestResult.changed() && manifestCache.isUpToDate();
+        if (sameManifest && !fullVerify && !recovered && isUnchanged(patches, filesToCheck, hashIndex)) {
+            logger.info("Patch manifest and install have not changed since the last update, skipping file checks.");
+            if (!filesToCheck.isEmpty()) {
+                listener.onChecked(filesToCheck.get(filesToCheck.size() - 1), filesToCheck.size());
+            }
+            return;
+        }
+        FileVerifier fileVerifier = new FileVerifier(installPath, hashIndex, fullVerify, verifyThreads);
+        AtomicInteger checked = new AtomicInteger();
+        long verifyStart = System.nanoTime();
+        List<String> filesToDownload;
+        try {
+            filesToDownload = fileVerifier.verify(patches, filesToCheck, file -> listener.onChecked(file, checked.incrementAndGet()));
+        } catch (Exception exception) {
+            saveAfterFailure(hashIndex, exception);
+            throw exception;
+        }
+        hashIndex.save();
+        long verifyTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - verifyStart, TimeUnit.NANOSECONDS);
+        logger.info("Checked {} file(s). Took {}ms.", filesToCheck.size(), verifyTime);
+
+        logger.info("-----------------------------------------------------------------------");
+
+        if (filesToDownload.isEmpty()) {
+            logger.info("No files need downloaded, we are up to date.");
+            manifestCache.markUpToDate();
+            return;
+        }
+
+        File tempFolder = new File("temp");
+        if (!tempFolder.exists() && !tempFolder.mkdirs()) {
+            logger.error("Unable to create temp folder!");
+            throw new IOException("Unable to create temp folder!");
+        }
+
+        logger.info("{} file(s) are going to be downloaded.", filesToDownload.size());
+        logger.info(filesToDownload);
+
+        // find the fastest mirror that is up before we start downloading from it
+        patchMirrors.probe(client);
+
+        // make sure everything fits before we touch the install
+        DiskSpacePlanner diskSpacePlanner = new DiskSpacePlanner(client, installPath, tempFolder, streamDownloads, resumeThreshold, patchMirrors, limiter);
+        int downloads = diskSpacePlanner.plan(patches, filesToDownload, maxDownloads);
+        listener.onDownloading(filesToDownload.size());
+
+        PatchDownloader patchDownloader = new PatchDownloader(client, installPath, tempFolder, downloads, retries, streamDownloads, resumeThreshold, hashIndex, journal, limiter, downloadCache, verifyThreads, patchMirrors);
+        try {
+            patchDownloader.downloadAll(patches, filesToDownload, listener);
+        } catch (Exception exception) {
+            // keep the hashes of everything that was extracted before it failed
+            saveAfterFailure(hashIndex, exception);
+            throw exception;
+        } finally {
+            patchMirrors.logStats();
+        }
+        // save the hashes of everything we extracted
+        hashIndex.save();
+        manifestCache.markUpToDate();
+    }
+
+    /**
+     * Save the hash index after the work that changed it failed. If saving fails too, that is
+     * added to the work's error instead of hiding it.
+     *
+     * @param hashIndex The hash index.
+     * @param failure   Why the work failed.
+     */
+    private void saveAfterFailure(HashIndex hashIndex, Exception failure) {
+        try {
+            hashIndex.save();
+        } catch (IOException exception) {
+            failure.addSuppressed(exception);
+        }
+    }
+
+    /**
+     * Check if every file is still the size and modified time it was when it was last hashed,
+     * and that hash is what the manifest wants. This only reads file attributes, nothing is hashed.
+     *
+     * @param patches   The patch manifest.
+     * @param files     The files to check.
+     * @param hashIndex The hash index.
+     * @return True if every file is unchanged and up to date.
+     */
+    private boolean isUnchanged(JSONObject patches, List<String> files, HashIndex hashIndex) {
+        for (String file : files) {
+            String indexedHash = hashIndex.getHash(new File(installPath, file));
+            if (indexedHash == null || !indexedHash.equalsIgnoreCase(patches.getJSONObject(file).getString("hash"))) {
+                logger.info("{} changed since the last update", file);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets told about the progress of an update.
+     */
+    public interface Listener extends PatchDownloader.Listener {
+
+        /**
+         * Files are about to be checked.
+         *
+         * @param files How many files will be checked.
+         */
+        void onChecking(int files);
+
+        /**
+         * A file was checked.
+         *
+         * @param file    The file's name in the manifest.
+         * @param checked How many files have been checked so far.
+         */
+        void onChecked(String file, int checked);
+
+        /**
+         * Files are about to be downloaded.
+         *
+         * @param files How many files will be downloaded.
+         */
+        void onDownloading(int files);
+    }
+}
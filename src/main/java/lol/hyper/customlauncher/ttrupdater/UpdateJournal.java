@@ -0,0 +1,194 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import lol.hyper.customlauncher.tools.JSONUtils;
+import lol.hyper.customlauncher.tools.OSDetection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+public class UpdateJournal {
+
+    /**
+     * The file the journal is saved to.
+     */
+    private static final File JOURNAL_FILE = new File("config", "update-journal.json");
+    /**
+     * The UpdateJournal logger.
+     */
+    private final Logger logger = LogManager.getLogger(this);
+    /**
+     * Where this journal is saved.
+     */
+    private final File journalFile;
+    /**
+     * Files that are being updated right now, keyed by the file's full path.
+     */
+    private final JSONObject journal;
+
+    /**
+     * Loads the journal from disk.
+     */
+    public UpdateJournal() {
+        this(JOURNAL_FILE);
+    }
+
+    /**
+     * Loads a journal from somewhere other than the config folder.
+     *
+     * @param journalFile Where the journal is saved.
+     */
+    UpdateJournal(File journalFile) {
+        this.journalFile = journalFile;
+        JSONObject loaded = new JSONObject();
+        if (journalFile.exists()) {
+            try {
+                loaded = new JSONObject(JSONUtils.readFile(journalFile));
+            } catch (JSONException exception) {
+                logger.warn("Update journal is invalid, ignoring it", exception);
+            }
+        }
+        journal = loaded;
+    }
+
+    /**
+     * Record that a file is about to be replaced.
+     *
+     * @param output       The file in the install.
+     * @param staging      The file the new copy is written to.
+     * @param expectedHash The hash the new copy should have.
+     */
+    public synchronized void begin(File output, File staging, String expectedHash) throws IOException {
+        JSONObject entry = new JSONObject();
+        entry.put("staging", staging.getAbsolutePath());
+        entry.put("hash", expectedHash);
+        journal.put(output.getAbsolutePath(), entry);
+        save();
+    }
+
+    /**
+     * Record that a file is done being replaced, or that we gave up on it.
+     *
+     * @param output The file in the install.
+     */
+    public synchronized void finish(File output) throws IOException {
+        if (journal.remove(output.getAbsolutePath()) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Finish or clean up any updates that were cut off last time. If the new copy of a file was
+     * fully written, it's moved into place. Otherwise, the file is removed from the hash index
+     * so only that file is checked again.
+     *
+     * @param hashIndex The hash index.
+     * @return True if there were unfinished updates.
+     */
+    public synchronized boolean recover(HashIndex hashIndex) {
+        if (journal.isEmpty()) {
+            return false;
+        }
+        logger.warn("Found {} update(s) that did not finish last time", journal.length());
+        for (String path : journal.keySet()) {
+            File output = new File(path);
+            JSONObject entry = journal.getJSONObject(path);
+            File staging = new File(entry.getString("staging"));
+            String expectedHash = entry.getString("hash");
+            // we don't know what state this file is in, so make sure it gets checked
+            hashIndex.remove(output);
+            if (!staging.exists()) {
+                logger.info("{} has no staged copy, it will be checked again", output.getAbsolutePath());
+                continue;
+            }
+            try {
+                String stagingHash = FileVerifier.calcSHA1(staging);
+                if (stagingHash.equalsIgnoreCase(expectedHash)) {
+                    replace(staging, output);
+                    hashIndex.putHash(output, expectedHash.toLowerCase(Locale.ROOT));
+                    logger.info("Finished the update for {} from its staged copy", output.getAbsolutePath());
+                } else {
+                    Files.deleteIfExists(staging.toPath());
+                    logger.info("Staged copy of {} was incomplete, it will be downloaded again", output.getAbsolutePath());
+                }
+            } catch (IOException | NoSuchAlgorithmException exception) {
+                logger.error("Unable to recover update for {}", output.getAbsolutePath(), exception);
+            }
+        }
+        journal.clear();
+        try {
+            save();
+        } catch (IOException exception) {
+            logger.error("Unable to save update journal", exception);
+        }
+        return true;
+    }
+
+    /**
+     * Flush a finished file to disk and move it over the old one in one step,
+     * so the install never has a half written file.
+     *
+     * @param staging The finished file.
+     * @param output  The file to replace.
+     */
+    public static void replace(File staging, File output) throws IOException {
+        try (FileChannel channel = FileChannel.open(staging.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        try {
+            Files.move(staging.toPath(), output.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(staging.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        // make sure the rename itself is on disk, Windows can't open folders like this
+        if (OSDetection.isLinux()) {
+            try (FileChannel folder = FileChannel.open(output.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ)) {
+                folder.force(true);
+            } catch (IOException ignored) {
+                // not every filesystem supports this, the file itself is already synced
+            }
+        }
+    }
+
+    /**
+     * Write the journal to disk. It's written to a temp file and moved, so the journal is never half written.
+     */
+    private void save() throws IOException {
+        Path temp = new File(journalFile.getPath() + ".tmp").toPath();
+        Files.writeString(temp, journal.toString(), StandardCharsets.UTF_8);
+        try {
+            Files.move(temp, journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(temp, journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
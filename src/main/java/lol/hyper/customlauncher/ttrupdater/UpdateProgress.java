@@ -0,0 +1,275 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class UpdateProgress implements UpdateEngine.Listener {
+
+    /**
+     * How many files are being checked.
+     */
+    private final AtomicInteger filesToCheck = new AtomicInteger();
+    /**
+     * How many files have been checked.
+     */
+    private final AtomicInteger filesChecked = new AtomicInteger();
+    /**
+     * How many files are being downloaded.
+     */
+    private final AtomicInteger filesToDownload = new AtomicInteger();
+    /**
+     * How many files have been downloaded and extracted.
+     */
+    private final AtomicInteger filesDownloaded = new AtomicInteger();
+    /**
+     * The size of every download that has started, if the server told us.
+     */
+    private final AtomicLong bytesTotal = new AtomicLong();
+    /**
+     * How much of the started downloads we have, including resumed bytes.
+     */
+    private final AtomicLong bytesDone = new AtomicLong();
+    /**
+     * How many bytes were actually downloaded this time.
+     */
+    private final AtomicLong bytesTransferred = new AtomicLong();
+    /**
+     * Byte counts for each file being downloaded.
+     */
+    private final Map<String, FileBytes> fileBytes = new ConcurrentHashMap<>();
+    /**
+     * What each file being worked on is doing.
+     */
+    private final Map<String, String> fileStatus = new ConcurrentHashMap<>();
+    /**
+     * The last status that was set.
+     */
+    private volatile String status;
+    /**
+     * Have we started checking files?
+     */
+    private volatile boolean checkingStarted = false;
+    /**
+     * Are we downloading yet?
+     */
+    private volatile boolean downloading = false;
+    /**
+     * When files started being checked, in nanoseconds.
+     */
+    private volatile long checkStarted;
+    /**
+     * When files started downloading, in nanoseconds.
+     */
+    private volatile long downloadStarted;
+
+    /**
+     * Creates an UpdateProgress.
+     *
+     * @param status The status to show until the update says otherwise.
+     */
+    public UpdateProgress(String status) {
+        this.status = status;
+    }
+
+    @Override
+    public void onChecking(int files) {
+        filesToCheck.set(files);
+        checkStarted = System.nanoTime();
+        checkingStarted = true;
+    }
+
+    @Override
+    public void onChecked(String file, int checked) {
+        filesChecked.set(checked);
+        status = "Checked file " + new File(file).getName();
+    }
+
+    @Override
+    public void onDownloading(int files) {
+        filesToDownload.set(files);
+        downloadStarted = System.nanoTime();
+        downloading = true;
+    }
+
+    @Override
+    public void onStatus(String file, String status) {
+        fileStatus.put(file, status);
+        this.status = status;
+    }
+
+    @Override
+    public void onDownloadStarted(String file, long length, long existing) {
+        FileBytes bytes = fileBytes.computeIfAbsent(file, key -> new FileBytes());
+        // a retry starts the file over, so replace what it counted before
+        bytesTotal.addAndGet(Math.max(length, 0) - bytes.length.getAndSet(Math.max(length, 0)));
+        bytesDone.addAndGet(existing - bytes.done.getAndSet(existing));
+    }
+
+    @Override
+    public void onDownloaded(String file, int bytes) {
+        FileBytes counts = fileBytes.get(file);
+        if (counts != null) {
+            counts.done.addAndGet(bytes);
+        }
+        bytesDone.addAndGet(bytes);
+        bytesTransferred.addAndGet(bytes);
+    }
+
+    @Override
+    public void onFinished(String file) {
+        fileStatus.remove(file);
+        filesDownloaded.incrementAndGet();
+        status = "Finished extracting file " + file;
+    }
+
+    /**
+     * Get how many files are being checked.
+     *
+     * @return The file count.
+     */
+    public int getFilesToCheck() {
+        return filesToCheck.get();
+    }
+
+    /**
+     * Get how many files have been checked.
+     *
+     * @return The file count.
+     */
+    public int getFilesChecked() {
+        return filesChecked.get();
+    }
+
+    /**
+     * Get how many files are being downloaded.
+     *
+     * @return The file count.
+     */
+    public int getFilesToDownload() {
+        return filesToDownload.get();
+    }
+
+    /**
+     * Get how many files have been downloaded and extracted.
+     *
+     * @return The file count.
+     */
+    public int getFilesDownloaded() {
+        return filesDownloaded.get();
+    }
+
+    /**
+     * Get how much of the started downloads we have.
+     *
+     * @return The byte count.
+     */
+    public long getBytesDone() {
+        return bytesDone.get();
+    }
+
+    /**
+     * Get how many bytes were actually downloaded. Resumed bytes are not counted.
+     *
+     * @return The byte count.
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred.get();
+    }
+
+    /**
+     * Guess how big the whole download is. Files that have not started yet are
+     * counted as the average size of the ones that have.
+     *
+     * @return The estimated size in bytes, or 0 if nothing has started.
+     */
+    public long getEstimatedBytes() {
+        long total = bytesTotal.get();
+        int started = fileBytes.size();
+        if (started == 0 || total == 0) {
+            return 0;
+        }
+        int notStarted = Math.max(0, filesToDownload.get() - started);
+        return total + notStarted * (total / started);
+    }
+
+    /**
+     * Are we downloading yet?
+     *
+     * @return True if files are being downloaded, false if they are still being checked.
+     */
+    public boolean isDownloading() {
+        return downloading;
+    }
+
+    /**
+     * Have we started checking files?
+     *
+     * @return True if files are being checked or already were.
+     */
+    public boolean hasStartedChecking() {
+        return checkingStarted;
+    }
+
+    /**
+     * Get when files started being checked. Only use this if {@link #hasStartedChecking()} is true.
+     *
+     * @return The time from {@link System#nanoTime()}.
+     */
+    public long getCheckStarted() {
+        return checkStarted;
+    }
+
+    /**
+     * Get when files started downloading. Only use this if {@link #isDownloading()} is true.
+     *
+     * @return The time from {@link System#nanoTime()}.
+     */
+    public long getDownloadStarted() {
+        return downloadStarted;
+    }
+
+    /**
+     * Get the status text to show. If more than one file is being worked on, this says how many others there are.
+     *
+     * @return The status.
+     */
+    public String getStatus() {
+        int others = fileStatus.size() - 1;
+        return others > 0 ? status + " (+" + others + " more)" : status;
+    }
+
+    /**
+     * Byte counts for a single file.
+     */
+    private static class FileBytes {
+
+        /**
+         * The size of the download.
+         */
+        private final AtomicLong length = new AtomicLong();
+        /**
+         * How much of the download we have.
+         */
+        private final AtomicLong done = new AtomicLong();
+    }
+}
@@ -21,6 +21,8 @@ import lol.hyper.customlauncher.CustomLauncherRewrite;
 import lol.hyper.customlauncher.tools.ExceptionWindow;
 import lol.hyper.customlauncher.tools.OSDetection;
 import lol.hyper.customlauncher.tools.PopUpWindow;
+import lol.hyper.customlauncher.tools.SharedHttpClient;
+import lol.hyper.customlauncher.tools.TrafficShaper;
 import lol.hyper.githubreleaseapi.GitHubRelease;
 import lol.hyper.githubreleaseapi.GitHubReleaseAPI;
 import lol.hyper.githubreleaseapi.ReleaseNotFoundException;
@@ -36,6 +38,7 @@ import java.awt.*;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.http.HttpResponse;
 import java.nio.file.Files;
 
 public class UpdateChecker {
@@ -114,6 +117,35 @@ public class UpdateChecker {
         }
     }
 
+    /**
+     * Download a file. This shares bandwidth with game downloads, and goes before background downloads.
+     *
+     * @param url    The URL to download.
+     * @param output The file to save to.
+     */
+    private void downloadFile(URI url, File output) throws IOException {
+        TrafficShaper trafficShaper = TrafficShaper.getInstance();
+        HttpResponse<InputStream> response;
+        try {
+            response = SharedHttpClient.get().send(SharedHttpClient.newRequest(url).GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading " + url);
+        }
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("HTTP status code " + response.statusCode() + " for " + url);
+        }
+        try (InputStream in = new BufferedInputStream(response.body()); OutputStream out = new FileOutputStream(output)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+                trafficShaper.acquire(TrafficShaper.Priority.PATCH, n);
+            }
+        }
+    }
+
     /**
      * Downloads the latest version of the launcher from GitHub.
      */
@@ -150,7 +182,7 @@ public class UpdateChecker {
             logger.info("Downloading new version from {}", finalDownload);
             File output = new File(newVersionName);
             try {
-                FileUtils.copyURLToFile(finalDownload.toURL(), output);
+                downloadFile(finalDownload, output);
             } catch (IOException exception) {
                 logger.error("Unable to download file from {}", finalDownload, exception);
                 new ExceptionWindow(exception);
@@ -183,7 +215,7 @@ public class UpdateChecker {
             logger.info("Downloading new version from {}", finalDownload);
             File output = new File(newVersionName);
             try {
-                FileUtils.copyURLToFile(finalDownload.toURL(), output);
+                downloadFile(finalDownload, output);
             } catch (IOException exception) {
                 logger.error("Unable to download file from {}", finalDownload, exception);
                 new ExceptionWindow(exception);
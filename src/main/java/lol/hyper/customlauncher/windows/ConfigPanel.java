@@ -45,6 +45,14 @@ public class ConfigPanel extends JPanel {
      * Check box for field office notifications.
      */
     public final JCheckBox showFieldOfficeNotificationsBox;
+    /**
+     * Check box for hashing every game file.
+     */
+    public final JCheckBox fullVerifyBox;
+    /**
+     * Check box for downloading updates in the background.
+     */
+    public final JCheckBox backgroundUpdatesBox;
 
     /**
      * Creates a ConfigPanel.
@@ -61,6 +69,10 @@ public class ConfigPanel extends JPanel {
         showInvasionNotificationsBox = new JCheckBox();
         JLabel showFieldOfficeNotificationsText = new JLabel("<html>Show field office notifications?</html>");
         showFieldOfficeNotificationsBox = new JCheckBox();
+        JLabel fullVerifyText = new JLabel("<html>Check every game file on launch?</html>");
+        fullVerifyBox = new JCheckBox();
+        JLabel backgroundUpdatesText = new JLabel("<html>Download updates in the background?</html>");
+        backgroundUpdatesBox = new JCheckBox();
         JButton saveButton = new JButton("Save");
 
         JButton browseButton = new JButton("Browse");
@@ -78,6 +90,8 @@ public class ConfigPanel extends JPanel {
         ttrInstallBox.setCaretPosition(0);
         showInvasionNotificationsBox.setSelected(configHandler.showCogInvasionNotifications());
         showFieldOfficeNotificationsBox.setSelected(configHandler.showFieldOfficeNotifications());
+        fullVerifyBox.setSelected(configHandler.fullVerify());
+        backgroundUpdatesBox.setSelected(configHandler.backgroundUpdates());
 
         saveButton.addActionListener(e -> {
             String newInstallPath = ttrInstallBox.getText().trim();
@@ -92,18 +106,24 @@ public class ConfigPanel extends JPanel {
 
                 boolean showInvasionNotifications = showInvasionNotificationsBox.isSelected();
                 boolean showFieldOfficeNotifications = showFieldOfficeNotificationsBox.isSelected();
-                configHandler.updateConfig(showInvasionNotifications, showFieldOfficeNotifications, testPath);
+                boolean fullVerify = fullVerifyBox.isSelected();
+                boolean backgroundUpdates = backgroundUpdatesBox.isSelected();
+                configHandler.updateConfig(showInvasionNotifications, showFieldOfficeNotifications, fullVerify, backgroundUpdates, testPath);
                 logger.info("Saving config");
             }
         });
         ttrInstall.setBounds(20, 15, 100, 30);
         ttrInstallBox.setBounds(120, 15, 250, 30);
-        saveButton.setBounds(20, 200, 60, 30);
+        saveButton.setBounds(20, 280, 60, 30);
         ttrInstallBox.setMaximumSize(new Dimension(200, 25));
         showInvasionNotificationsText.setBounds(20, 60, 100, 80);
         showInvasionNotificationsBox.setBounds(120, 75, 100, 30);
         showFieldOfficeNotificationsText.setBounds(20, 100, 100, 80);
         showFieldOfficeNotificationsBox.setBounds(120, 115, 100, 30);
+        fullVerifyText.setBounds(20, 140, 100, 80);
+        fullVerifyBox.setBounds(120, 155, 100, 30);
+        backgroundUpdatesText.setBounds(20, 180, 100, 80);
+        backgroundUpdatesBox.setBounds(120, 195, 100, 30);
         browseButton.setBounds(380, 15, 70, 30);
 
         add(ttrInstall);
@@ -113,6 +133,10 @@ public class ConfigPanel extends JPanel {
         add(showInvasionNotificationsBox);
         add(showFieldOfficeNotificationsText);
         add(showFieldOfficeNotificationsBox);
+        add(fullVerifyText);
+        add(fullVerifyBox);
+        add(backgroundUpdatesText);
+        add(backgroundUpdatesBox);
         add(browseButton);
     }
 }
@@ -27,12 +27,14 @@ import lol.hyper.customlauncher.invasions.InvasionTrackerPanel;
 import lol.hyper.customlauncher.login.LoginHandler;
 import lol.hyper.customlauncher.releasenotes.ReleaseNotesPanel;
 import lol.hyper.customlauncher.releasenotes.ReleaseNotesTracker;
+import lol.hyper.customlauncher.tools.ContentEncoding;
 import lol.hyper.customlauncher.tools.JSONUtils;
 import lol.hyper.customlauncher.tools.PopUpWindow;
 import lol.hyper.customlauncher.toondata.ToonDataPanel;
+import lol.hyper.customlauncher.ttrupdater.BackgroundUpdater;
+import lol.hyper.customlauncher.ttrupdater.IntegritySweeper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.json.JSONObject;
 
 import javax.swing.*;
 import java.awt.*;
@@ -140,6 +142,8 @@ public final class MainWindow extends JFrame {
                     // update the config to reflect what we have saved
                     configWindow.showInvasionNotificationsBox.setSelected(configHandler.showCogInvasionNotifications());
                     configWindow.showFieldOfficeNotificationsBox.setSelected(configHandler.showFieldOfficeNotifications());
+                    configWindow.fullVerifyBox.setSelected(configHandler.fullVerify());
+                    configWindow.backgroundUpdatesBox.setSelected(configHandler.backgroundUpdates());
                     configWindow.ttrInstallBox.setText(configHandler.getInstallPath().getAbsolutePath());
                 }
             }
@@ -170,30 +174,14 @@ public final class MainWindow extends JFrame {
             public void mouseClicked(MouseEvent event) {
                 @SuppressWarnings("unchecked") JList<Account> accountList = (JList<Account>) event.getSource();
                 if (event.getClickCount() == 2) {
-                    // check if the game is online before launching
-                    boolean isOnline = checkTTRStatus();
-                    if (!isOnline) {
-                        return;
-                    }
                     Account selectedAccount = accountList.getSelectedValue();
-                    logger.info("Using account: {}", selectedAccount.username());
-                    Account.Type accountType = selectedAccount.accountType();
-                    logger.info("Account type is {}", accountType.toInt());
-                    switch (accountType) {
-                        case ENCRYPTED, LEGACY_ENCRYPTED -> SwingUtilities.invokeLater(() -> {
-                            SecretPrompt secretPrompt = new SecretPrompt(accounts, selectedAccount);
-                            secretPrompt.setVisible(true);
-                        });
-                        case PLAINTEXT -> {
-                            HashMap<String, String> newLoginRequest = new HashMap<>();
-                            newLoginRequest.put("username", selectedAccount.username());
-                            newLoginRequest.put("password", selectedAccount.password());
-                            LoginHandler loginHandler = new LoginHandler(newLoginRequest);
-                            loginHandler.login();
-                        }
+                    if (selectedAccount == null) {
+                        return;
                     }
                     // clear the selection
                     accountList.getSelectionModel().clearSelection();
+                    // check if the game is online before launching, without freezing the window while we wait
+                    checkTTRStatus(() -> login(selectedAccount));
                 }
             }
         });
@@ -202,6 +190,7 @@ public final class MainWindow extends JFrame {
             public void windowClosing(WindowEvent event) {
                 Frame frame = (Frame) event.getSource();
                 logger.info("Closing {}", frame.getTitle());
+                ContentEncoding.logSavings();
             }
         };
 
@@ -219,6 +208,15 @@ public final class MainWindow extends JFrame {
         tabs.setBorder(null);
         add(tabs);
         setLocationRelativeTo(null);
+
+        // check game files while the user picks an account, so the check after login is quick
+        if (configHandler.backgroundUpdates() && !configHandler.getLastManifest().isEmpty()) {
+            new BackgroundUpdater(configHandler).start();
+        }
+        // look for damaged game files while the launcher sits idle
+        if (configHandler.integritySweep()) {
+            new IntegritySweeper(configHandler).start();
+        }
     }
 
     /**
@@ -233,24 +231,52 @@ public final class MainWindow extends JFrame {
     }
 
     /**
-     * Check TTR's status using their API.
+     * Log in with an account, asking for its secret first if it's encrypted.
      *
-     * @return True if open, false if the game is down.
+     * @param selectedAccount The account.
      */
-    private boolean checkTTRStatus() {
-        JSONObject ttrStatusJSON = JSONUtils.requestJSON("https://toontownrewritten.com/api/status");
-        if (ttrStatusJSON == null) {
-            return false;
+    private void login(Account selectedAccount) {
+        logger.info("Using account: {}", selectedAccount.username());
+        Account.Type accountType = selectedAccount.accountType();
+        logger.info("Account type is {}", accountType.toInt());
+        switch (accountType) {
+            case ENCRYPTED, LEGACY_ENCRYPTED -> {
+                SecretPrompt secretPrompt = new SecretPrompt(accounts, selectedAccount);
+                secretPrompt.setVisible(true);
+            }
+            case PLAINTEXT -> {
+                HashMap<String, String> newLoginRequest = new HashMap<>();
+                newLoginRequest.put("username", selectedAccount.username());
+                newLoginRequest.put("password", selectedAccount.password());
+                LoginHandler loginHandler = new LoginHandler(newLoginRequest);
+                loginHandler.login();
+            }
         }
+    }
 
-        boolean status = ttrStatusJSON.getBoolean("open");
-        logger.info("Game status: {}", status);
-        // ttr is down, show the banner if there is one
-        if (ttrStatusJSON.has("banner")) {
-            String banner = ttrStatusJSON.getString("banner");
-            logger.info("TTR's banner returned: {}", banner);
-            new PopUpWindow(this, banner);
-        }
-        return status;
+    /**
+     * Check TTR's status using their API, without waiting for it. The banner, if there is one,
+     * and whenOnline both run on the Swing thread once TTR answers.
+     *
+     * @param whenOnline Runs if the game is open.
+     */
+    private void checkTTRStatus(Runnable whenOnline) {
+        JSONUtils.requestJSONAsync("https://toontownrewritten.com/api/status").thenAccept(ttrStatusJSON -> SwingUtilities.invokeLater(() -> {
+            if (ttrStatusJSON == null) {
+                return;
+            }
+
+            boolean status = ttrStatusJSON.getBoolean("open");
+            logger.info("Game status: {}", status);
+            // ttr is down, show the banner if there is one
+            if (ttrStatusJSON.has("banner")) {
+                String banner = ttrStatusJSON.getString("banner");
+                logger.info("TTR's banner returned: {}", banner);
+                new PopUpWindow(this, banner);
+            }
+            if (status) {
+                whenOnline.run();
+            }
+        }));
     }
 }
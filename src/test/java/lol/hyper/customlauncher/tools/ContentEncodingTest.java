@@ -0,0 +1,205 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package lol.hyper.customlauncher.tools;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentEncodingTest {
+
+    /**
+     * The body every response decodes to.
+     */
+    private static final String BODY = "{\"invasions\": [" + "{\"type\": \"Cold Caller\", \"progress\": \"12/3000\"},".repeat(200) + "{}]}";
+
+    @Test
+    void decodesGzip() throws Exception {
+        byte[] compressed = gzip(BODY.getBytes(StandardCharsets.UTF_8));
+        HttpServer server = startServer(200, "gzip", compressed);
+        try {
+            AtomicLong wireBytes = new AtomicLong();
+            HttpResponse<String> response = SharedHttpClient.get().send(request(server), ContentEncoding.ofString(wireBytes::set));
+            assertEquals(BODY, response.body());
+            assertEquals(compressed.length, wireBytes.get());
+            assertTrue(compressed.length < BODY.length());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void decodesZlibDeflate() throws Exception {
+        byte[] compressed = deflate(BODY.getBytes(StandardCharsets.UTF_8), false);
+        HttpServer server = startServer(200, "deflate", compressed);
+        try {
+            assertEquals(BODY, readStream(server, compressed.length));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void decodesRawDeflate() throws Exception {
+        // some servers send deflate without the zlib header
+        byte[] compressed = deflate(BODY.getBytes(StandardCharsets.UTF_8), true);
+        HttpServer server = startServer(200, "deflate", compressed);
+        try {
+            assertEquals(BODY, readStream(server, compressed.length));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void passesIdentityThrough() throws Exception {
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        HttpServer server = startServer(200, null, body);
+        try {
+            assertEquals(BODY, readStream(server, body.length));
+            assertEquals(BODY, SharedHttpClient.get().send(request(server), ContentEncoding.ofString()).body());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void ignoresEncodingOnNoContent() throws Exception {
+        // there is no body to decompress, even though the headers name an encoding
+        HttpServer server = startServer(204, "gzip", null);
+        try {
+            HttpResponse<String> response = SharedHttpClient.get().send(request(server), ContentEncoding.ofString());
+            assertEquals(204, response.statusCode());
+            assertEquals("", response.body());
+            assertEquals("", readStream(server, 0));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void ignoresEncodingOnNotModified() throws Exception {
+        HttpServer server = startServer(304, "gzip", null);
+        try {
+            HttpResponse<String> response = SharedHttpClient.get().send(request(server), ContentEncoding.ofString());
+            assertEquals(304, response.statusCode());
+            assertEquals("", response.body());
+            assertEquals("", readStream(server, 0));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Request the server's body as a stream and decode it.
+     *
+     * @param server    The server.
+     * @param wireBytes How many bytes should come over the network.
+     * @return The decoded body.
+     */
+    private static String readStream(HttpServer server, long wireBytes) throws Exception {
+        HttpResponse<InputStream> response = SharedHttpClient.get().send(request(server), HttpResponse.BodyHandlers.ofInputStream());
+        try (ContentEncoding.DecodedStream body = ContentEncoding.decode(response)) {
+            String text = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals(wireBytes, body.getWireBytes());
+            return text;
+        }
+    }
+
+    /**
+     * Make a request to the server that accepts compressed responses.
+     *
+     * @param server The server.
+     * @return The request.
+     */
+    private static HttpRequest request(HttpServer server) {
+        URI uri = URI.create("http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort() + "/");
+        return ContentEncoding.accept(SharedHttpClient.newRequest(uri)).GET().build();
+    }
+
+    /**
+     * Start a server that sends the same response to everything.
+     *
+     * @param status   The status code to send.
+     * @param encoding The Content-Encoding to send, or null for none.
+     * @param body     The body to send, or null for no body.
+     * @return The server.
+     */
+    private static HttpServer startServer(int status, String encoding, byte[] body) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                if (encoding != null) {
+                    exchange.getResponseHeaders().add("Content-Encoding", encoding);
+                }
+                if (body == null) {
+                    exchange.sendResponseHeaders(status, -1);
+                    return;
+                }
+                exchange.sendResponseHeaders(status, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * Compress some bytes with gzip.
+     *
+     * @param data The bytes.
+     * @return The compressed bytes.
+     */
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Compress some bytes with deflate.
+     *
+     * @param data The bytes.
+     * @param raw  Leave out the zlib header.
+     * @return The compressed bytes.
+     */
+    private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(compressed, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+            out.write(data);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package lol.hyper.customlauncher.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JSONReaderTest {
+
+    /**
+     * Make a reader for some JSON.
+     *
+     * @param json The JSON.
+     * @return The reader.
+     */
+    private static JSONReader reader(String json) {
+        return new JSONReader(new StringReader(json));
+    }
+
+    @Test
+    void readsEscapes() throws IOException {
+        JSONReader reader = reader("[\"a\\\"b\\\\c\\/d\\n\\t\\u00e9\\u0041\"]");
+        reader.beginArray();
+        assertEquals("a\"b\\c/d\n\t\u00e9A", reader.nextString());
+        reader.endArray();
+        assertEquals(JSONReader.Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    void readsUtf8FromStream() throws IOException {
+        byte[] json = "{\"name\": \"Toontown Central \u2013 \u00e9\"}".getBytes(StandardCharsets.UTF_8);
+        JSONReader reader = new JSONReader(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8));
+        reader.beginObject();
+        assertEquals("name", reader.nextName());
+        assertEquals("Toontown Central \u2013 \u00e9", reader.nextString());
+        reader.endObject();
+    }
+
+    @Test
+    void readsNumbers() throws IOException {
+        JSONReader reader = reader("[42, -7, 1.5e2, 2.0, \"13\", 9007199254740993, -0.25]");
+        reader.beginArray();
+        assertEquals(42, reader.nextInt());
+        assertEquals(-7, reader.nextInt());
+        assertEquals(150, reader.nextInt());
+        assertEquals(2L, reader.nextLong());
+        assertEquals(13, reader.nextInt());
+        assertEquals(9007199254740993L, reader.nextLong());
+        assertEquals(-0.25, reader.nextDouble());
+        reader.endArray();
+    }
+
+    @Test
+    void rejectsBadNumbers() throws IOException {
+        JSONReader reader = reader("[1.5, 3000000000]");
+        reader.beginArray();
+        assertThrows(IOException.class, reader::nextInt);
+        assertThrows(IOException.class, reader::nextInt);
+    }
+
+    @Test
+    void readsLiterals() throws IOException {
+        JSONReader reader = reader("{\"a\": true, \"b\": false, \"c\": null}");
+        reader.beginObject();
+        reader.nextName();
+        assertTrue(reader.nextBoolean());
+        reader.nextName();
+        assertFalse(reader.nextBoolean());
+        reader.nextName();
+        assertEquals(JSONReader.Token.NULL, reader.peek());
+        reader.nextNull();
+        reader.endObject();
+    }
+
+    @Test
+    void skipsNestedValues() throws IOException {
+        JSONReader reader = reader("{\"skip\": {\"a\": [1, {\"b\": \"]}\"}, [], {}], \"c\": null}, \"keep\": \"yes\"}");
+        reader.beginObject();
+        assertEquals("skip", reader.nextName());
+        reader.skipValue();
+        assertEquals("keep", reader.nextName());
+        assertEquals("yes", reader.nextString());
+        assertFalse(reader.hasNext());
+        reader.endObject();
+    }
+
+    @Test
+    void readsAcrossBufferBoundaries() throws IOException {
+        // longer than the reader's buffer, so strings and numbers get split between reads
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\": ").append(i).append(", \"name\": \"district\\u0020").append(i).append("\"}");
+        }
+        JSONReader reader = reader(json.append("]").toString());
+        reader.beginArray();
+        for (int i = 0; i < 5000; i++) {
+            reader.beginObject();
+            assertEquals("id", reader.nextName());
+            assertEquals(i, reader.nextInt());
+            assertEquals("name", reader.nextName());
+            assertEquals("district " + i, reader.nextString());
+            reader.endObject();
+        }
+        reader.endArray();
+    }
+
+    @Test
+    void truncatedInputThrowsIOException() {
+        String[] truncated = {"", "[", "[1", "[1,", "{", "{\"a\"", "{\"a\":", "{\"a\": 1", "{\"a\": 1,", "[\"abc", "[\"\\u00", "[{\"a\": [true"};
+        for (String json : truncated) {
+            assertThrows(IOException.class, () -> reader(json).skipValue(), json);
+        }
+    }
+
+    @Test
+    void malformedInputThrowsIOException() {
+        String[] malformed = {"{\"a\" 1}", "[1,]", "{\"a\": 1,}", "[1] 2", "{a: 1}", "[\"\\x\"]", "[nope]"};
+        for (String json : malformed) {
+            assertThrows(IOException.class, () -> {
+                JSONReader reader = reader(json);
+                reader.skipValue();
+                reader.peek();
+            }, json);
+        }
+    }
+
+    @Test
+    void wrongTokenThrowsIOException() throws IOException {
+        JSONReader reader = reader("{\"a\": \"text\"}");
+        assertThrows(IOException.class, reader::beginArray);
+        reader.beginObject();
+        reader.nextName();
+        assertThrows(IOException.class, reader::nextBoolean);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package lol.hyper.customlauncher.tools;
+
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JSONUtilsTest {
+
+    /**
+     * How many requests for the same URL are sent at once.
+     */
+    private static final int CALLERS = 4;
+    /**
+     * How many requests the server got.
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+    /**
+     * The server holds its response until this is released, so every caller asks while the first request is out.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    void sharesInFlightRequest() throws Exception {
+        HttpServer server = startServer(200, "\"v1\"");
+        try {
+            List<JSONObject> responses = requestAll(getUrl(server, "/shared"));
+            assertEquals(1, requests.get());
+            for (JSONObject response : responses) {
+                assertNotNull(response);
+                assertEquals(42, response.getInt("value"));
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void keepsUncacheableBodyForWaiters() throws Exception {
+        // without an ETag the body would not be kept, but the other callers still need it
+        HttpServer server = startServer(200, null);
+        try {
+            List<JSONObject> responses = requestAll(getUrl(server, "/uncacheable"));
+            assertEquals(1, requests.get());
+            for (JSONObject response : responses) {
+                assertNotNull(response);
+                assertEquals(42, response.getInt("value"));
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void sharesErrors() throws Exception {
+        HttpServer server = startServer(500, null);
+        try {
+            List<JSONObject> responses = requestAll(getUrl(server, "/error"));
+            assertEquals(1, requests.get());
+            for (JSONObject response : responses) {
+                assertNull(response);
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void reusesFreshResponse() throws Exception {
+        HttpServer server = startServer(200, "\"v1\"");
+        release.countDown();
+        try {
+            String url = getUrl(server, "/fresh");
+            assertNotNull(JSONUtils.requestJSONAsync(url).get(10, TimeUnit.SECONDS));
+            JSONObject again = JSONUtils.requestJSONAsync(url).get(10, TimeUnit.SECONDS);
+            assertEquals(42, again.getInt("value"));
+            assertEquals(1, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Request a URL from several callers at once, then let the server answer and wait for all of them.
+     *
+     * @param url The URL.
+     * @return What each caller got.
+     */
+    private List<JSONObject> requestAll(String url) throws Exception {
+        List<CompletableFuture<JSONObject>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            futures.add(JSONUtils.requestJSONAsync(url));
+        }
+        release.countDown();
+        List<JSONObject> responses = new ArrayList<>();
+        for (CompletableFuture<JSONObject> future : futures) {
+            responses.add(future.get(10, TimeUnit.SECONDS));
+        }
+        return responses;
+    }
+
+    /**
+     * Start a server that answers every path with the same JSON once {@link #release} is released.
+     *
+     * @param status The status code to send.
+     * @param etag   The ETag to send, or null for none.
+     * @return The server.
+     */
+    private HttpServer startServer(int status, String etag) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                requests.incrementAndGet();
+                release.await(10, TimeUnit.SECONDS);
+                if (etag != null) {
+                    exchange.getResponseHeaders().add("ETag", etag);
+                }
+                byte[] body = "{\"value\": 42}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(status, body.length);
+                exchange.getResponseBody().write(body);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * Get the URL of a path on the server.
+     *
+     * @param server The server.
+     * @param path   The path.
+     * @return The URL.
+     */
+    private static String getUrl(HttpServer server, String path) {
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort() + path;
+    }
+}
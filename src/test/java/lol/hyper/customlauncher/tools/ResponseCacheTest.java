@@ -0,0 +1,132 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package lol.hyper.customlauncher.tools;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.net.http.HttpHeaders;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+    /**
+     * An endpoint that is saved to disk.
+     */
+    private static final String RELEASE_NOTES = "https://www.toontownrewritten.com/api/releasenotes/123";
+    /**
+     * An endpoint with a short TTL.
+     */
+    private static final String POPULATION = "https://www.toontownrewritten.com/api/population";
+    /**
+     * An endpoint with no TTL of its own.
+     */
+    private static final String OTHER = "https://example.com/api/other";
+
+    /**
+     * Where the cache saves responses.
+     */
+    @TempDir
+    Path cacheFolder;
+
+    /**
+     * Make response headers.
+     *
+     * @param headers Header names and values.
+     * @return The headers.
+     */
+    private static HttpHeaders headers(String... headers) {
+        Map<String, List<String>> map = new HashMap<>();
+        for (int i = 0; i < headers.length; i += 2) {
+            map.put(headers[i], List.of(headers[i + 1]));
+        }
+        return HttpHeaders.of(map, (name, value) -> true);
+    }
+
+    @Test
+    void usesEndpointTTLs() {
+        ResponseCache cache = new ResponseCache(cacheFolder.toFile());
+        assertEquals(Duration.ofDays(7), cache.put(RELEASE_NOTES, "{}", headers()).ttl());
+        assertEquals(Duration.ofSeconds(10), cache.put(POPULATION, "{}", headers()).ttl());
+        // anything else can still be used for a moment
+        ResponseCache.Entry other = cache.put(OTHER, "{}", headers());
+        assertEquals(Duration.ofSeconds(2), other.ttl());
+        assertTrue(other.isFresh());
+    }
+
+    @Test
+    void expiresAfterTTL() {
+        long fetched = System.currentTimeMillis() - 11_000;
+        ResponseCache.Entry entry = new ResponseCache.Entry("{}", "\"abc\"", null, fetched, Duration.ofSeconds(10));
+        assertFalse(entry.isFresh());
+
+        // the server saying it has not changed makes it fresh again
+        ResponseCache cache = new ResponseCache(cacheFolder.toFile());
+        ResponseCache.Entry fresh = cache.revalidated(POPULATION, entry);
+        assertTrue(fresh.isFresh());
+        assertEquals("\"abc\"", fresh.etag());
+        assertSame(fresh, cache.get(POPULATION));
+    }
+
+    @Test
+    void onlySavesLongTTLsToDisk() {
+        ResponseCache cache = new ResponseCache(cacheFolder.toFile());
+        cache.put(RELEASE_NOTES, "{\"id\": 123}", headers("ETag", "\"v1\""));
+        cache.put(POPULATION, "{\"total\": 1}", headers("ETag", "\"v2\""));
+
+        File[] saved = cacheFolder.toFile().listFiles();
+        assertNotNull(saved);
+        assertEquals(1, saved.length);
+
+        // a new cache, like after a restart
+        ResponseCache restarted = new ResponseCache(cacheFolder.toFile());
+        ResponseCache.Entry entry = restarted.get(RELEASE_NOTES);
+        assertNotNull(entry);
+        assertEquals("{\"id\": 123}", entry.body());
+        assertEquals("\"v1\"", entry.etag());
+        assertNull(restarted.get(POPULATION));
+    }
+
+    @Test
+    void dropsLeastRecentlyUsed() {
+        ResponseCache cache = new ResponseCache(cacheFolder.toFile());
+        cache.put(OTHER, "{}", headers());
+        for (int i = 0; i < 200; i++) {
+            cache.put(OTHER + i, "{}", headers());
+            // keep the first one in use
+            assertNotNull(cache.get(OTHER));
+        }
+        assertNotNull(cache.get(OTHER + 199));
+        assertNull(cache.get(OTHER + 0));
+    }
+
+    @Test
+    void keepsOnlyUsefulResponses() {
+        ResponseCache cache = new ResponseCache(cacheFolder.toFile());
+        assertTrue(cache.shouldKeep(POPULATION, headers()));
+        assertTrue(cache.shouldKeep(OTHER, headers("ETag", "\"abc\"")));
+        assertTrue(cache.shouldKeep(OTHER, headers("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT")));
+        assertFalse(cache.shouldKeep(OTHER, headers()));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package lol.hyper.customlauncher.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrafficShaperTest {
+
+    /**
+     * Start acquiring bytes on another thread.
+     *
+     * @param shaper   The shaper.
+     * @param priority The traffic's priority.
+     * @return Completes with the time in nanoseconds when the bytes were acquired.
+     */
+    private static CompletableFuture<Long> acquireAsync(TrafficShaper shaper, TrafficShaper.Priority priority) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                shaper.acquire(priority, 1);
+            } catch (Exception exception) {
+                throw new RuntimeException(exception);
+            }
+            return System.nanoTime();
+        });
+    }
+
+    /**
+     * Get how many milliseconds passed since a time.
+     *
+     * @param start The time in nanoseconds.
+     * @return The milliseconds.
+     */
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    void quietShaperDoesNotWait() throws Exception {
+        TrafficShaper shaper = new TrafficShaper();
+        long start = System.nanoTime();
+        shaper.acquire(TrafficShaper.Priority.BACKGROUND, 1024);
+        shaper.acquire(TrafficShaper.Priority.PATCH, 1024);
+        assertTrue(millisSince(start) < 200, "nothing else was active");
+    }
+
+    @Test
+    void interactiveNeverWaits() throws Exception {
+        TrafficShaper shaper = new TrafficShaper();
+        shaper.acquire(TrafficShaper.Priority.PATCH, 1024);
+        shaper.beginInteractive();
+        long start = System.nanoTime();
+        shaper.acquire(TrafficShaper.Priority.INTERACTIVE, 1024);
+        assertTrue(millisSince(start) < 200, "interactive traffic went first");
+        shaper.endInteractive(0);
+    }
+
+    @Test
+    void patchWaitsForInteractiveResponse() throws Exception {
+        TrafficShaper shaper = new TrafficShaper();
+        shaper.beginInteractive();
+        CompletableFuture<Long> patch = acquireAsync(shaper, TrafficShaper.Priority.PATCH);
+        Thread.sleep(300);
+        assertFalse(patch.isDone(), "patch traffic went while a response was pending");
+
+        long answered = System.nanoTime();
+        shaper.endInteractive(512);
+        long acquired = patch.get(5, TimeUnit.SECONDS);
+        // it also waits for the interactive traffic to go quiet
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(acquired - answered) >= 200, "patch traffic went right after the response");
+    }
+
+    @Test
+    void interactiveHoldIsCapped() throws Exception {
+        TrafficShaper shaper = new TrafficShaper();
+        long start = System.nanoTime();
+        // a request that is never answered only holds patch traffic back for a while
+        shaper.beginInteractive();
+        long acquired = acquireAsync(shaper, TrafficShaper.Priority.PATCH).get(10, TimeUnit.SECONDS);
+        long held = TimeUnit.NANOSECONDS.toMillis(acquired - start);
+        assertTrue(held >= 1900, "patch traffic was held for " + held + "ms");
+        assertTrue(held < 5000, "patch traffic was held for " + held + "ms");
+    }
+
+    @Test
+    void backgroundWaitsForPatch() throws Exception {
+        TrafficShaper shaper = new TrafficShaper();
+        long start = System.nanoTime();
+        shaper.acquire(TrafficShaper.Priority.PATCH, 1024);
+        shaper.acquire(TrafficShaper.Priority.BACKGROUND, 1024);
+        assertTrue(millisSince(start) >= 200, "background traffic went while patch traffic was active");
+
+        // background traffic doesn't hold patch traffic back
+        start = System.nanoTime();
+        shaper.acquire(TrafficShaper.Priority.PATCH, 1024);
+        assertTrue(millisSince(start) < 200, "patch traffic waited for background traffic");
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaPatcherTest {
+
+    /**
+     * Where the test files go.
+     */
+    @TempDir
+    Path folder;
+
+    @Test
+    void appliesPatch() throws Exception {
+        byte[] old = randomBytes(300_000, 1);
+        PatchBuilder builder = new PatchBuilder(old);
+        // bigger than the patcher's chunks, with some bytes changed and some inserted
+        builder.entry(100_000, randomBytes(5_000, 2), 20_000);
+        // skip back to reuse part of the old file
+        builder.entry(80_000, new byte[0], -150_000);
+        builder.entry(20_000, randomBytes(100, 3), 250_000);
+        // past the end of the old file, which is read as zeros
+        builder.entry(1_000, new byte[0], 0);
+        byte[] expected = builder.newer.toByteArray();
+
+        File oldFile = write("old.bin", old);
+        File patch = write("patch.diff", builder.build());
+        File output = folder.resolve("new.bin").toFile();
+        String hash = DeltaPatcher.apply(oldFile, patch, output);
+
+        assertArrayEquals(expected, Files.readAllBytes(output.toPath()));
+        assertEquals(sha1(expected), hash);
+    }
+
+    @Test
+    void decompressesPatch() throws Exception {
+        byte[] extracted = new PatchBuilder(randomBytes(1_000, 4)).entry(1_000, randomBytes(10, 5), 0).build();
+        File compressed = write("patch.diff.bz2", bzip2(extracted));
+        File output = folder.resolve("patch.diff").toFile();
+
+        String hash = DeltaPatcher.decompress(compressed, output);
+
+        assertArrayEquals(extracted, Files.readAllBytes(output.toPath()));
+        assertEquals(sha1(extracted), hash);
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        File oldFile = write("old.bin", randomBytes(100, 6));
+        File patch = write("patch.diff", "BSDIFF39 is not the right version at all".getBytes(StandardCharsets.US_ASCII));
+        File tooSmall = write("small.diff", "BSDIFF40".getBytes(StandardCharsets.US_ASCII));
+        File output = folder.resolve("new.bin").toFile();
+
+        assertThrows(IOException.class, () -> DeltaPatcher.apply(oldFile, patch, output));
+        assertThrows(IOException.class, () -> DeltaPatcher.apply(oldFile, tooSmall, output));
+    }
+
+    @Test
+    void rejectsTruncatedPatch() throws IOException {
+        byte[] old = randomBytes(10_000, 7);
+        byte[] patch = new PatchBuilder(old).entry(10_000, randomBytes(500, 8), 0).build();
+        File oldFile = write("old.bin", old);
+        File truncated = write("patch.diff", Arrays.copyOf(patch, patch.length - 40));
+        File output = folder.resolve("new.bin").toFile();
+
+        assertThrows(IOException.class, () -> DeltaPatcher.apply(oldFile, truncated, output));
+    }
+
+    @Test
+    void rejectsControlPastNewSize() throws IOException {
+        byte[] old = randomBytes(1_000, 9);
+        byte[] patch = new PatchBuilder(old).entry(1_000, new byte[0], 0).build();
+        // say the new file is smaller than the control block makes it
+        writeOffset(patch, 24, 10);
+        File oldFile = write("old.bin", old);
+        File corrupt = write("patch.diff", patch);
+        File output = folder.resolve("new.bin").toFile();
+
+        assertThrows(IOException.class, () -> DeltaPatcher.apply(oldFile, corrupt, output));
+    }
+
+    /**
+     * Write a file in the test folder.
+     *
+     * @param name  The file's name.
+     * @param bytes What to write.
+     * @return The file.
+     */
+    private File write(String name, byte[] bytes) throws IOException {
+        return Files.write(folder.resolve(name), bytes).toFile();
+    }
+
+    /**
+     * Make some random bytes that are the same every run.
+     *
+     * @param length How many bytes.
+     * @param seed   The seed.
+     * @return The bytes.
+     */
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Compress some bytes with bzip2.
+     *
+     * @param bytes The bytes.
+     * @return The compressed bytes.
+     */
+    private static byte[] bzip2(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new BZip2CompressorOutputStream(compressed)) {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Get the SHA1 of some bytes, the same way the patcher formats it.
+     *
+     * @param bytes The bytes.
+     * @return The lowercase hex SHA1.
+     */
+    private static String sha1(byte[] bytes) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(bytes));
+    }
+
+    /**
+     * Write a bsdiff number. These are 8 bytes, little endian, with the top bit as the sign.
+     *
+     * @param buffer Where to write to.
+     * @param offset Where the number starts.
+     * @param value  The number.
+     */
+    private static void writeOffset(byte[] buffer, int offset, long value) {
+        long magnitude = Math.abs(value);
+        for (int i = 0; i < 8; i++) {
+            buffer[offset + i] = (byte) (magnitude >>> (8 * i));
+        }
+        if (value < 0) {
+            buffer[offset + 7] |= (byte) 0x80;
+        }
+    }
+
+    /**
+     * Builds a BSDIFF40 patch the way bsdiff lays it out, along with the file it should produce.
+     * Each entry adds diff bytes on top of the old file, inserts extra bytes, then seeks the old file.
+     */
+    private static class PatchBuilder {
+
+        /**
+         * The file being patched.
+         */
+        private final byte[] old;
+        /**
+         * The file the patch produces.
+         */
+        private final ByteArrayOutputStream newer = new ByteArrayOutputStream();
+        /**
+         * The control block, before it's compressed.
+         */
+        private final ByteArrayOutputStream control = new ByteArrayOutputStream();
+        /**
+         * The diff block, before it's compressed.
+         */
+        private final ByteArrayOutputStream diff = new ByteArrayOutputStream();
+        /**
+         * The extra block, before it's compressed.
+         */
+        private final ByteArrayOutputStream extra = new ByteArrayOutputStream();
+        /**
+         * Where in the old file the next entry starts.
+         */
+        private long oldPos;
+
+        /**
+         * Creates a PatchBuilder.
+         *
+         * @param old The file being patched.
+         */
+        private PatchBuilder(byte[] old) {
+            this.old = old;
+        }
+
+        /**
+         * Add a control entry. Every 97th byte taken from the old file is changed.
+         *
+         * @param addLength How many bytes to take from the old file.
+         * @param inserted  The bytes to insert after them.
+         * @param seek      How far to move in the old file after that.
+         * @return This builder.
+         */
+        private PatchBuilder entry(int addLength, byte[] inserted, long seek) {
+            for (int i = 0; i < addLength; i++) {
+                long pos = oldPos + i;
+                byte oldByte = pos >= 0 && pos < old.length ? old[(int) pos] : 0;
+                byte newByte = (byte) (oldByte + (i % 97 == 0 ? 1 : 0));
+                newer.write(newByte);
+                diff.write(newByte - oldByte);
+            }
+            newer.writeBytes(inserted);
+            extra.writeBytes(inserted);
+            byte[] numbers = new byte[24];
+            writeOffset(numbers, 0, addLength);
+            writeOffset(numbers, 8, inserted.length);
+            writeOffset(numbers, 16, seek);
+            control.writeBytes(numbers);
+            oldPos += addLength + seek;
+            return this;
+        }
+
+        /**
+         * Build the patch.
+         *
+         * @return The patch, not compressed as a whole.
+         */
+        private byte[] build() throws IOException {
+            byte[] controlBlock = bzip2(control.toByteArray());
+            byte[] diffBlock = bzip2(diff.toByteArray());
+            byte[] extraBlock = bzip2(extra.toByteArray());
+            byte[] header = new byte[32];
+            System.arraycopy("BSDIFF40".getBytes(StandardCharsets.US_ASCII), 0, header, 0, 8);
+            writeOffset(header, 8, controlBlock.length);
+            writeOffset(header, 16, diffBlock.length);
+            writeOffset(header, 24, newer.size());
+            ByteArrayOutputStream patch = new ByteArrayOutputStream();
+            patch.writeBytes(header);
+            patch.writeBytes(controlBlock);
+            patch.writeBytes(diffBlock);
+            patch.writeBytes(extraBlock);
+            return patch.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package lol.hyper.customlauncher.ttrupdater;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashIndexTest {
+
+    /**
+     * The hash stored for the game file. The index does not check it, so it doesn't have to be real.
+     */
+    private static final String HASH = "0123456789abcdef0123456789abcdef01234567";
+    /**
+     * Where the test files go.
+     */
+    @TempDir
+    Path folder;
+
+    /**
+     * Write a game file with a known modified time.
+     *
+     * @param contents The file's contents.
+     * @param modified The modified time in epoch millis.
+     * @return The file.
+     */
+    private File gameFile(String contents, long modified) throws Exception {
+        File file = folder.resolve("phase_4.mf").toFile();
+        Files.writeString(file.toPath(), contents, StandardCharsets.UTF_8);
+        assertTrue(file.setLastModified(modified));
+        return file;
+    }
+
+    @Test
+    void keepsHashWhileUnchanged() throws Exception {
+        HashIndex hashIndex = new HashIndex(folder.resolve("hashindex.json").toFile());
+        File file = gameFile("toontown", 1_600_000_000_000L);
+        assertNull(hashIndex.getHash(file));
+        hashIndex.putHash(file, HASH);
+        assertEquals(HASH, hashIndex.getHash(file));
+    }
+
+    @Test
+    void forgetsHashWhenSizeChanges() throws Exception {
+        HashIndex hashIndex = new HashIndex(folder.resolve("hashindex.json").toFile());
+        File file = gameFile("toontown", 1_600_000_000_000L);
+        hashIndex.putHash(file, HASH);
+
+        // same modified time, so only the size gives it away
+        Files.writeString(file.toPath(), " rewritten", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertTrue(file.setLastModified(1_600_000_000_000L));
+        assertNull(hashIndex.getHash(file));
+    }
+
+    @Test
+    void forgetsHashWhenModifiedTimeChanges() throws Exception {
+        HashIndex hashIndex = new HashIndex(folder.resolve("hashindex.json").toFile());
+        File file = gameFile("toontown", 1_600_000_000_000L);
+        hashIndex.putHash(file, HASH);
+
+        // same size, so only the modified time gives it away
+        gameFile("toonTOWN", 1_600_000_002_000L);
+        assertNull(hashIndex.getHash(file));
+    }
+
+    @Test
+    void forgetsRemovedFiles() throws Exception {
+        HashIndex hashIndex = new HashIndex(folder.resolve("hashindex.json").toFile());
+        File file = gameFile("toontown", 1_600_000_000_000L);
+        hashIndex.putHash(file, HASH);
+        hashIndex.remove(file);
+        assertNull(hashIndex.getHash(file));
+
+        hashIndex.putHash(file, HASH);
+        assertTrue(file.delete());
+        assertNull(hashIndex.getHash(file));
+    }
+
+    @Test
+    void loadsSavedIndex() throws Exception {
+        File indexFile = folder.resolve("hashindex.json").toFile();
+        File file = gameFile("toontown", 1_600_000_000_000L);
+        HashIndex hashIndex = new HashIndex(indexFile);
+        hashIndex.putHash(file, HASH);
+        hashIndex.save();
+
+        HashIndex loaded = new HashIndex(indexFile);
+        assertEquals(HASH, loaded.getHash(file));
+        // what was saved is checked against the file too
+        gameFile("toontown!", 1_600_000_000_000L);
+        assertNull(loaded.getHash(file));
+    }
+
+    @Test
+    void ignoresBrokenIndex() throws Exception {
+        File indexFile = folder.resolve("hashindex.json").toFile();
+        Files.writeString(indexFile.toPath(), "{\"broken", StandardCharsets.UTF_8);
+        File file = gameFile("toontown", 1_600_000_000_000L);
+
+        HashIndex hashIndex = new HashIndex(indexFile);
+        assertNull(hashIndex.getHash(file));
+        hashIndex.putHash(file, HASH);
+        hashIndex.save();
+        assertEquals(HASH, new HashIndex(indexFile).getHash(file));
+    }
+}
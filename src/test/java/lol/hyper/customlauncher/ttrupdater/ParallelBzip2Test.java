@@ -0,0 +1,153 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelBzip2Test {
+
+    /**
+     * Where the test files go.
+     */
+    @TempDir
+    Path folder;
+
+    @Test
+    void matchesSerialExtraction() throws IOException {
+        // the smallest block size, so this is split into a few dozen blocks
+        byte[] extracted = gameFile(3_000_000);
+        File compressed = write("phase_3.mf.bz2", bzip2(extracted, 1));
+
+        File serial = folder.resolve("serial").toFile();
+        String serialHash = PatchDownloader.extractBz2(new ByteArrayInputStream(Files.readAllBytes(compressed.toPath())), serial);
+        File parallel = folder.resolve("parallel").toFile();
+        String parallelHash = ParallelBzip2.extractParallel(compressed, parallel, 4);
+
+        assertArrayEquals(extracted, Files.readAllBytes(serial.toPath()));
+        assertArrayEquals(extracted, Files.readAllBytes(parallel.toPath()));
+        assertEquals(serialHash, parallelHash);
+    }
+
+    @Test
+    void extractsEveryBlockSize() throws IOException {
+        byte[] extracted = gameFile(1_500_000);
+        for (int level = 1; level <= 9; level += 4) {
+            File compressed = write("level" + level + ".bz2", bzip2(extracted, level));
+            File output = folder.resolve("level" + level).toFile();
+            ParallelBzip2.extractParallel(compressed, output, 2);
+            assertArrayEquals(extracted, Files.readAllBytes(output.toPath()), "level " + level);
+        }
+    }
+
+    @Test
+    void extractsSingleBlock() throws IOException {
+        byte[] extracted = "Toontown Central".getBytes(StandardCharsets.US_ASCII);
+        File compressed = write("small.bz2", bzip2(extracted, 9));
+        File output = folder.resolve("small").toFile();
+
+        ParallelBzip2.extractParallel(compressed, output, 4);
+
+        assertArrayEquals(extracted, Files.readAllBytes(output.toPath()));
+    }
+
+    @Test
+    void extractsLargeFile() throws IOException {
+        // split up on machines with more than one core, extracted normally on the rest
+        byte[] extracted = gameFile(6_000_000);
+        File compressed = write("phase_5.mf.bz2", bzip2(extracted, 9));
+        File output = folder.resolve("phase_5.mf").toFile();
+
+        ParallelBzip2.extract(compressed, output, 0);
+
+        assertArrayEquals(extracted, Files.readAllBytes(output.toPath()));
+    }
+
+    @Test
+    void rejectsDamagedBlock() throws IOException {
+        byte[] bytes = bzip2(gameFile(1_000_000), 1);
+        bytes[bytes.length / 2] ^= 0x55;
+        File compressed = write("damaged.bz2", bytes);
+        File output = folder.resolve("damaged").toFile();
+
+        assertThrows(IOException.class, () -> ParallelBzip2.extractParallel(compressed, output, 4));
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        File compressed = write("not.bz2", "PK this is a zip file".getBytes(StandardCharsets.US_ASCII));
+        File output = folder.resolve("not").toFile();
+
+        assertThrows(IOException.class, () -> ParallelBzip2.extractParallel(compressed, output, 4));
+    }
+
+    /**
+     * Write a file in the test folder.
+     *
+     * @param name  The file's name.
+     * @param bytes What to write.
+     * @return The file.
+     */
+    private File write(String name, byte[] bytes) throws IOException {
+        return Files.write(folder.resolve(name), bytes).toFile();
+    }
+
+    /**
+     * Make something that compresses about as well as a game file, and is the same every run.
+     *
+     * @param length How many bytes.
+     * @return The bytes.
+     */
+    private static byte[] gameFile(int length) {
+        Random random = new Random(length);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            // mostly repeats of what came before, with some noise
+            bytes[i] = i > 64 && random.nextInt(4) != 0 ? bytes[i - 1 - random.nextInt(64)] : (byte) random.nextInt(256);
+        }
+        return bytes;
+    }
+
+    /**
+     * Compress some bytes with bzip2.
+     *
+     * @param bytes     The bytes.
+     * @param blockSize The block size level, 1-9.
+     * @return The compressed bytes.
+     */
+    private static byte[] bzip2(byte[] bytes, int blockSize) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new BZip2CompressorOutputStream(compressed, blockSize)) {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package lol.hyper.customlauncher.ttrupdater;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lol.hyper.customlauncher.tools.TrafficShaper;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatchDownloaderTest {
+
+    /**
+     * The name of the download on the server.
+     */
+    private static final String DOWNLOAD_NAME = "phase_4.mf.bz2";
+    /**
+     * The ETag the server sends for the download.
+     */
+    private static final String ETAG = "\"v1\"";
+    /**
+     * How much of the download is already in the .part file.
+     */
+    private static final int EXISTING = 50_000;
+    /**
+     * Where the test files go.
+     */
+    @TempDir
+    Path folder;
+    /**
+     * The last Range the server was asked for, or null if there was none.
+     */
+    private volatile String range;
+    /**
+     * The last If-Range the server was sent, or null if there was none.
+     */
+    private volatile String ifRange;
+    /**
+     * How many body bytes the server sent.
+     */
+    private final AtomicLong sent = new AtomicLong();
+
+    @Test
+    void resumesFromPartialContent() throws Exception {
+        byte[] extracted = gameFile();
+        byte[] compressed = bzip2(extracted);
+        File tempFolder = folder.resolve("temp").toFile();
+        HttpServer server = startServer(compressed, Mode.PARTIAL);
+        try {
+            writePartial(server, tempFolder, Arrays.copyOf(compressed, EXISTING), compressed);
+            download(server, tempFolder, extracted, compressed);
+        } finally {
+            server.stop(0);
+        }
+
+        assertEquals("bytes=" + EXISTING + "-", range);
+        assertEquals(ETAG, ifRange);
+        assertEquals(compressed.length - EXISTING, sent.get());
+        assertArrayEquals(extracted, Files.readAllBytes(folder.resolve("install").resolve("phase_4.mf")));
+        assertFalse(new File(tempFolder, DOWNLOAD_NAME + ".part").exists());
+        assertFalse(new File(tempFolder, DOWNLOAD_NAME + ".part.json").exists());
+    }
+
+    @Test
+    void startsOverOnFullResponse() throws Exception {
+        byte[] extracted = gameFile();
+        byte[] compressed = bzip2(extracted);
+        File tempFolder = folder.resolve("temp").toFile();
+        // the file changed on the server, so what we have is from some other version
+        HttpServer server = startServer(compressed, Mode.FULL);
+        try {
+            writePartial(server, tempFolder, new byte[EXISTING], compressed);
+            download(server, tempFolder, extracted, compressed);
+        } finally {
+            server.stop(0);
+        }
+
+        assertEquals("bytes=" + EXISTING + "-", range);
+        assertEquals(compressed.length, sent.get());
+        assertArrayEquals(extracted, Files.readAllBytes(folder.resolve("install").resolve("phase_4.mf")));
+        assertFalse(new File(tempFolder, DOWNLOAD_NAME + ".part").exists());
+    }
+
+    @Test
+    void rejectsWrongContentRange() throws Exception {
+        byte[] extracted = gameFile();
+        byte[] compressed = bzip2(extracted);
+        File tempFolder = folder.resolve("temp").toFile();
+        HttpServer server = startServer(compressed, Mode.WRONG_RANGE);
+        try {
+            writePartial(server, tempFolder, Arrays.copyOf(compressed, EXISTING), compressed);
+            assertThrows(IOException.class, () -> download(server, tempFolder, extracted, compressed));
+        } finally {
+            server.stop(0);
+        }
+
+        // the partial file can't be trusted anymore, so the next try starts over
+        assertFalse(new File(tempFolder, DOWNLOAD_NAME + ".part").exists());
+        assertFalse(folder.resolve("install").resolve("phase_4.mf").toFile().exists());
+    }
+
+    /**
+     * Download the test file from the server, with resuming on and streaming off.
+     *
+     * @param server     The server.
+     * @param tempFolder Where the download is saved before extracting.
+     * @param extracted  The file's contents.
+     * @param compressed The download's contents.
+     */
+    private void download(HttpServer server, File tempFolder, byte[] extracted, byte[] compressed) throws Exception {
+        File installPath = folder.resolve("install").toFile();
+        MirrorSelector mirrors = new MirrorSelector("patch", List.of(getBaseUrl(server)), 0);
+        UpdateJournal journal = new UpdateJournal(folder.resolve("update-journal.json").toFile());
+        PatchDownloader patchDownloader = new PatchDownloader(HttpClient.newHttpClient(), installPath, tempFolder, 1, 0, false, 0, new HashIndex(), journal, new BandwidthLimiter(TrafficShaper.Priority.PATCH), new DownloadCache(tempFolder, 0), 1, mirrors);
+
+        JSONObject entry = new JSONObject();
+        entry.put("dl", DOWNLOAD_NAME);
+        entry.put("hash", sha1(extracted));
+        entry.put("compHash", sha1(compressed));
+        JSONObject patches = new JSONObject();
+        patches.put("phase_4.mf", entry);
+        patchDownloader.downloadAll(patches, List.of("phase_4.mf"), new PatchDownloader.Listener() {
+            @Override
+            public void onStatus(String file, String status) {
+            }
+
+            @Override
+            public void onDownloadStarted(String file, long length, long existing) {
+            }
+
+            @Override
+            public void onDownloaded(String file, int bytes) {
+            }
+
+            @Override
+            public void onFinished(String file) {
+            }
+        });
+    }
+
+    /**
+     * Leave a .part file behind, like an earlier download that was cut off.
+     *
+     * @param server     The server the download came from.
+     * @param tempFolder Where the download is saved.
+     * @param partial    The bytes we already have.
+     * @param compressed The whole download.
+     */
+    private void writePartial(HttpServer server, File tempFolder, byte[] partial, byte[] compressed) throws Exception {
+        assertTrue(tempFolder.mkdirs());
+        Files.write(new File(tempFolder, DOWNLOAD_NAME + ".part").toPath(), partial);
+        JSONObject info = new JSONObject();
+        info.put("url", getBaseUrl(server) + DOWNLOAD_NAME);
+        info.put("compHash", sha1(compressed));
+        info.put("length", compressed.length);
+        info.put("etag", ETAG);
+        Files.writeString(new File(tempFolder, DOWNLOAD_NAME + ".part.json").toPath(), info.toString());
+    }
+
+    /**
+     * Start a server for the download.
+     *
+     * @param compressed The download's contents.
+     * @param mode       How the server answers a Range request.
+     * @return The server.
+     */
+    private HttpServer startServer(byte[] compressed, Mode mode) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/" + DOWNLOAD_NAME, exchange -> {
+            try (exchange) {
+                range = exchange.getRequestHeaders().getFirst("Range");
+                ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                if (range == null || mode == Mode.FULL) {
+                    send(exchange, 200, compressed, 0);
+                    return;
+                }
+                int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                int claimed = mode == Mode.WRONG_RANGE ? 0 : start;
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + claimed + "-" + (compressed.length - 1) + "/" + compressed.length);
+                send(exchange, 206, compressed, start);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * Send part of the download.
+     *
+     * @param exchange   The request.
+     * @param status     The status code.
+     * @param compressed The download's contents.
+     * @param start      Where to start sending from.
+     */
+    private void send(HttpExchange exchange, int status, byte[] compressed, int start) throws IOException {
+        exchange.sendResponseHeaders(status, compressed.length - start);
+        exchange.getResponseBody().write(compressed, start, compressed.length - start);
+        sent.addAndGet(compressed.length - start);
+    }
+
+    /**
+     * Get the base URL of the server.
+     *
+     * @param server The server.
+     * @return The URL, ending in a slash.
+     */
+    private static String getBaseUrl(HttpServer server) {
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Make a game file that compresses to a few hundred KB.
+     *
+     * @return The file's contents.
+     */
+    private static byte[] gameFile() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < 2_000_000; i++) {
+            builder.append(i * 2654435761L).append(' ');
+        }
+        return builder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Compress some bytes with bzip2.
+     *
+     * @param bytes The bytes.
+     * @return The compressed bytes.
+     */
+    private static byte[] bzip2(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new BZip2CompressorOutputStream(compressed)) {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Get the SHA1 of some bytes.
+     *
+     * @param bytes The bytes.
+     * @return The lowercase hex SHA1.
+     */
+    private static String sha1(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(bytes));
+    }
+
+    /**
+     * How the server answers a Range request.
+     */
+    private enum Mode {
+        /**
+         * Send the rest of the file.
+         */
+        PARTIAL,
+        /**
+         * Ignore the Range and send the whole file.
+         */
+        FULL,
+        /**
+         * Send the rest of the file, but say it starts somewhere else.
+         */
+        WRONG_RANGE
+    }
+}
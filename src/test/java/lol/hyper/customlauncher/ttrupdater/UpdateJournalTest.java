@@ -0,0 +1,142 @@
+/*
+ * This file is part of CustomLauncherRewrite.
+ *
+ * CustomLauncherRewrite is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CustomLauncherRewrite is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CustomLauncherRewrite.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package lol.hyper.customlauncher.ttrupdater;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateJournalTest {
+
+    /**
+     * The game file before the update.
+     */
+    private static final String OLD = "old phase_4.mf";
+    /**
+     * The game file after the update.
+     */
+    private static final String NEW = "new phase_4.mf, a little bigger";
+    /**
+     * Where the test files go.
+     */
+    @TempDir
+    Path folder;
+
+    /**
+     * Get the SHA1 of some text, in upper case like some manifests have it.
+     *
+     * @param text The text.
+     * @return The hash.
+     */
+    private static String sha1(String text) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().withUpperCase().formatHex(digest);
+    }
+
+    /**
+     * Write a file.
+     *
+     * @param name     The file's name in the test folder.
+     * @param contents The file's contents.
+     * @return The file.
+     */
+    private File write(String name, String contents) throws Exception {
+        File file = folder.resolve(name).toFile();
+        Files.writeString(file.toPath(), contents, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    void nothingToRecover() {
+        UpdateJournal journal = new UpdateJournal(folder.resolve("journal.json").toFile());
+        assertFalse(journal.recover(new HashIndex(folder.resolve("hashindex.json").toFile())));
+    }
+
+    @Test
+    void finishedFilesAreNotRecovered() throws Exception {
+        File journalFile = folder.resolve("journal.json").toFile();
+        File output = write("phase_4.mf", OLD);
+        UpdateJournal journal = new UpdateJournal(journalFile);
+        journal.begin(output, folder.resolve("phase_4.mf.staging").toFile(), sha1(NEW));
+        journal.finish(output);
+
+        assertFalse(new UpdateJournal(journalFile).recover(new HashIndex(folder.resolve("hashindex.json").toFile())));
+    }
+
+    @Test
+    void movesCompleteStagedCopyIntoPlace() throws Exception {
+        File journalFile = folder.resolve("journal.json").toFile();
+        File output = write("phase_4.mf", OLD);
+        File staging = folder.resolve("phase_4.mf.staging").toFile();
+        new UpdateJournal(journalFile).begin(output, staging, sha1(NEW));
+        // the launcher closed right after the new copy was written
+        write(staging.getName(), NEW);
+
+        HashIndex hashIndex = new HashIndex(folder.resolve("hashindex.json").toFile());
+        assertTrue(new UpdateJournal(journalFile).recover(hashIndex));
+        assertEquals(NEW, Files.readString(output.toPath(), StandardCharsets.UTF_8));
+        assertFalse(staging.exists());
+        assertEquals(sha1(NEW).toLowerCase(Locale.ROOT), hashIndex.getHash(output));
+        // it only has to be recovered once
+        assertFalse(new UpdateJournal(journalFile).recover(hashIndex));
+    }
+
+    @Test
+    void deletesIncompleteStagedCopy() throws Exception {
+        File journalFile = folder.resolve("journal.json").toFile();
+        File output = write("phase_4.mf", OLD);
+        File staging = folder.resolve("phase_4.mf.staging").toFile();
+        HashIndex hashIndex = new HashIndex(folder.resolve("hashindex.json").toFile());
+        hashIndex.putHash(output, sha1(OLD).toLowerCase(Locale.ROOT));
+        new UpdateJournal(journalFile).begin(output, staging, sha1(NEW));
+        // the launcher closed while the new copy was being written
+        write(staging.getName(), NEW.substring(0, 10));
+
+        assertTrue(new UpdateJournal(journalFile).recover(hashIndex));
+        assertEquals(OLD, Files.readString(output.toPath(), StandardCharsets.UTF_8));
+        assertFalse(staging.exists());
+        assertNull(hashIndex.getHash(output));
+    }
+
+    @Test
+    void checksFileWithNoStagedCopy() throws Exception {
+        File journalFile = folder.resolve("journal.json").toFile();
+        File output = write("phase_4.mf", OLD);
+        HashIndex hashIndex = new HashIndex(folder.resolve("hashindex.json").toFile());
+        hashIndex.putHash(output, sha1(OLD).toLowerCase(Locale.ROOT));
+        new UpdateJournal(journalFile).begin(output, folder.resolve("phase_4.mf.staging").toFile(), sha1(NEW));
+
+        assertTrue(new UpdateJournal(journalFile).recover(hashIndex));
+        assertEquals(OLD, Files.readString(output.toPath(), StandardCharsets.UTF_8));
+        assertNull(hashIndex.getHash(output));
+    }
+
+    @Test
+    void ignoresBrokenJournal() throws Exception {
+        File journalFile = write("journal.json", "{\"broken");
+        assertFalse(new UpdateJournal(journalFile).recover(new HashIndex(folder.resolve("hashindex.json").toFile())));
+    }
+}